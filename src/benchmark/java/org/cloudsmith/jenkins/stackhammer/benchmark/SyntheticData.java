@@ -0,0 +1,317 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.cloudsmith.stackhammer.api.model.CatalogGraph;
+import org.cloudsmith.stackhammer.api.model.Diagnostic;
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.cloudsmith.stackhammer.api.model.MessageWithSeverity;
+
+/**
+ * Generators for the data sets used by the benchmarks. The data is produced
+ * from a fixed seed so that all runs measure the same input. The model objects
+ * are subclasses that return the generated values from the getters that the
+ * plugin uses.
+ */
+public class SyntheticData {
+	static class SyntheticCatalogGraph extends CatalogGraph {
+		private static final long serialVersionUID = 1L;
+
+		private final String nodeName;
+
+		private final String instanceID;
+
+		private final String catalogGraph;
+
+		SyntheticCatalogGraph(String nodeName, String instanceID, String catalogGraph) {
+			this.nodeName = nodeName;
+			this.instanceID = instanceID;
+			this.catalogGraph = catalogGraph;
+		}
+
+		@Override
+		public String getCatalogGraph() {
+			return catalogGraph;
+		}
+
+		@Override
+		public String getInstanceID() {
+			return instanceID;
+		}
+
+		@Override
+		public String getNodeName() {
+			return nodeName;
+		}
+	}
+
+	static class SyntheticDiagnostic extends Diagnostic {
+		private static final long serialVersionUID = 1L;
+
+		private final int severity;
+
+		private final String message;
+
+		private final String resourcePath;
+
+		private final int line;
+
+		SyntheticDiagnostic(int severity, String message, String resourcePath, int line) {
+			this.severity = severity;
+			this.message = message;
+			this.resourcePath = resourcePath;
+			this.line = line;
+		}
+
+		@Override
+		public List<Diagnostic> getChildren() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public int getLine() {
+			return line;
+		}
+
+		@Override
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return resourcePath;
+		}
+
+		@Override
+		public int getSeverity() {
+			return severity;
+		}
+
+		@Override
+		public String getSeverityString() {
+			return severityString(severity);
+		}
+	}
+
+	static class SyntheticLogEntry extends LogEntry {
+		private static final long serialVersionUID = 1L;
+
+		private final int severity;
+
+		private final String logicalOrigin;
+
+		private final String physicalOrigin;
+
+		private final String message;
+
+		private final String details;
+
+		SyntheticLogEntry(int severity, String logicalOrigin, String physicalOrigin, String message, String details) {
+			this.severity = severity;
+			this.logicalOrigin = logicalOrigin;
+			this.physicalOrigin = physicalOrigin;
+			this.message = message;
+			this.details = details;
+		}
+
+		@Override
+		public String getDetails() {
+			return details;
+		}
+
+		@Override
+		public String getLogicalOrigin() {
+			return logicalOrigin;
+		}
+
+		@Override
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String getPhysicalOrigin() {
+			return physicalOrigin;
+		}
+
+		@Override
+		public int getSeverity() {
+			return severity;
+		}
+
+		@Override
+		public String getSeverityString() {
+			return severityString(severity);
+		}
+	}
+
+	private static final long SEED = 4711L;
+
+	/**
+	 * The severity of informational entries. The plugin only distinguishes warnings,
+	 * errors and fatal errors so any other value will do.
+	 */
+	private static final int INFO = 0;
+
+	private static final String[] RESOURCE_TYPES = { "File", "Package", "Service", "Exec", "User" };
+
+	/**
+	 * Returns a catalog graph for the given node with the given number of resources.
+	 */
+	public static CatalogGraph catalogGraph(String nodeName, int resourceCount) {
+		try {
+			String base64 = new String(Base64.encodeBase64(svg(resourceCount)), "US-ASCII");
+			return new SyntheticCatalogGraph(nodeName, "i-" + Integer.toHexString(nodeName.hashCode()), base64);
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates an empty temporary directory.
+	 */
+	public static File createTempDir(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, ".dir");
+		if(!(dir.delete() && dir.mkdir()))
+			throw new IOException("Unable to create directory " + dir);
+		return dir;
+	}
+
+	/**
+	 * Deletes a file or a directory and all of its content.
+	 */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null)
+			for(File child : children)
+				delete(child);
+		file.delete();
+	}
+
+	/**
+	 * Returns validation diagnostics where about one in ten is an error and one in four a warning.
+	 */
+	public static List<Diagnostic> diagnostics(int count) {
+		Random random = new Random(SEED);
+		List<Diagnostic> result = new ArrayList<Diagnostic>(count);
+		for(int idx = 0; idx < count; ++idx) {
+			int roll = random.nextInt(100);
+			int severity = roll < 10
+					? MessageWithSeverity.ERROR
+					: roll < 35
+							? MessageWithSeverity.WARNING
+							: INFO;
+			result.add(new SyntheticDiagnostic(severity, "Unknown variable: '$conf_" + idx + "'", "modules/app" +
+					(idx % 50) + "/manifests/init.pp", 1 + random.nextInt(400)));
+		}
+		return result;
+	}
+
+	private static String hostName(int host) {
+		return String.format("node-%03d.example.com", Integer.valueOf(host));
+	}
+
+	/**
+	 * Returns log entries for a deployment to <code>hostCount</code> hosts. Most entries are
+	 * informational and a few are warnings or errors, about as in a real deployment. One in
+	 * a hundred entries has no logical origin.
+	 */
+	public static List<LogEntry> logEntries(int count, int hostCount) {
+		Random random = new Random(SEED);
+		List<LogEntry> result = new ArrayList<LogEntry>(count);
+		for(int idx = 0; idx < count; ++idx) {
+			int host = random.nextInt(hostCount);
+			int roll = random.nextInt(100);
+			int severity = roll < 2
+					? MessageWithSeverity.ERROR
+					: roll < 10
+							? MessageWithSeverity.WARNING
+							: INFO;
+			String resource = RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)] + "[/etc/app/conf-" +
+					random.nextInt(1000) + ']';
+			String details = severity == INFO
+					? null
+					: "Could not evaluate: " + resource + " returned 1 instead of one of [0]";
+			result.add(new SyntheticLogEntry(severity, roll == 99
+					? null
+					: hostName(host), "10.0." + (host / 256) + '.' + (host % 256), resource + "/ensure: created",
+				details));
+		}
+		return result;
+	}
+
+	private static String severityString(int severity) {
+		switch(severity) {
+			case MessageWithSeverity.FATAL:
+				return "FATAL";
+			case MessageWithSeverity.ERROR:
+				return "ERROR";
+			case MessageWithSeverity.WARNING:
+				return "WARNING";
+			default:
+				return "INFO";
+		}
+	}
+
+	/**
+	 * Returns an SVG document in the form produced by Graphviz with the given number of
+	 * nodes, each one connected to its predecessor.
+	 */
+	public static byte[] svg(int nodeCount) {
+		int width = 200 * (int) Math.ceil(Math.sqrt(nodeCount));
+		StringBuilder bld = new StringBuilder(nodeCount * 400);
+		bld.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+		bld.append("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n");
+		bld.append("<svg width=\"").append(width).append("pt\" height=\"").append(width);
+		bld.append("pt\" viewBox=\"0 0 ").append(width).append(' ').append(width);
+		bld.append("\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+		bld.append("<g id=\"graph0\" class=\"graph\" transform=\"scale(1 1) rotate(0) translate(4 ").append(width);
+		bld.append(")\">\n<title>catalog</title>\n");
+		for(int idx = 0; idx < nodeCount; ++idx) {
+			int x = 200 * (idx % (width / 200)) + 100;
+			int y = -200 * (idx / (width / 200)) - 100;
+			bld.append("<g id=\"node").append(idx).append("\" class=\"node\"><title>File[/etc/app/conf-");
+			bld.append(idx).append("]</title>\n<ellipse fill=\"none\" stroke=\"black\" cx=\"").append(x);
+			bld.append("\" cy=\"").append(y).append("\" rx=\"90\" ry=\"18\"/>\n");
+			bld.append("<text text-anchor=\"middle\" x=\"").append(x).append("\" y=\"").append(y);
+			bld.append("\" font-family=\"Times,serif\" font-size=\"14.00\">File[/etc/app/conf-").append(idx);
+			bld.append("]</text>\n</g>\n");
+			if(idx > 0) {
+				bld.append("<g id=\"edge").append(idx).append("\" class=\"edge\"><title>node").append(idx - 1);
+				bld.append("&#45;&gt;node").append(idx).append("</title>\n<path fill=\"none\" stroke=\"black\" d=\"M");
+				bld.append(x).append(',').append(y - 18).append("C").append(x).append(',').append(y - 60);
+				bld.append(' ').append(x).append(',').append(y - 140).append(' ').append(x).append(',');
+				bld.append(y - 182).append("\"/>\n</g>\n");
+			}
+		}
+		bld.append("</g>\n</svg>\n");
+		try {
+			return bld.toString().getBytes("UTF-8");
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudsmith.jenkins.stackhammer.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the processing of dependency and catalog graphs: the zoom rewrite
+ * alone, and the complete base64 decode, rewrite, and gzip that happens the
+ * first time a graph is requested.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GraphBenchmark {
+	static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void write(int b) {
+			++count;
+		}
+	}
+
+	private static final String RESOURCE_PATH = "/static/benchmark/plugin/stackhammer";
+
+	@Param({ "1000", "100000", "1000000" })
+	public int nodeCount;
+
+	private byte[] svg;
+
+	private String base64;
+
+	private File dir;
+
+	@Benchmark
+	public long decodeAndStore() throws IOException {
+		File graphFile = new File(dir, "graph.svg.gz");
+		graphFile.delete();
+		GraphStore.store(graphFile, base64, RESOURCE_PATH);
+		return graphFile.length();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		svg = SyntheticData.svg(nodeCount);
+		base64 = SyntheticData.catalogGraph("node-000.example.com", nodeCount).getCatalogGraph();
+		dir = SyntheticData.createTempDir("graphs");
+	}
+
+	@Benchmark
+	public long stripFixedSize() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		GraphTrimmer.stripFixedSize(new ByteArrayInputStream(svg), out, RESOURCE_PATH);
+		return out.count;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticData.delete(dir);
+	}
+}
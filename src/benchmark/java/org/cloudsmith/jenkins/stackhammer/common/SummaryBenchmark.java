@@ -0,0 +1,59 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudsmith.jenkins.stackhammer.benchmark.SyntheticData;
+import org.cloudsmith.stackhammer.api.model.Diagnostic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the summary of validation diagnostics. This is the cost paid by results
+ * that were stored before the severity counters were introduced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SummaryBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	public int diagnosticCount;
+
+	private List<Diagnostic> diagnostics;
+
+	@Benchmark
+	public String getSummary() {
+		return StackOpResult.getSummary(diagnostics);
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		diagnostics = SyntheticData.diagnostics(diagnosticCount);
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudsmith.jenkins.stackhammer.benchmark.SyntheticData;
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentResult.HostEntry;
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the paths used when a deployment report is rendered. Each invocation
+ * works on a fresh clone of a result with a populated log, i.e. the state of a
+ * result that has just been loaded, so the host index is built every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DeploymentResultBenchmark {
+	@Param({ "1000", "100000", "1000000" })
+	public int entryCount;
+
+	@Param({ "50" })
+	public int hostCount;
+
+	private File dir;
+
+	private DeploymentResult result;
+
+	@Benchmark
+	public List<HostEntry> getHostEntries() {
+		return result.clone().getHostEntries();
+	}
+
+	@Benchmark
+	public String getSummary() {
+		return result.clone().getSummary();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir = SyntheticData.createTempDir("deployment");
+		result = new DeploymentResult(dir);
+		List<LogEntry> entries = SyntheticData.logEntries(entryCount, hostCount);
+		for(int idx = 0; idx < entryCount; idx += LogAppendBenchmark.BATCH_SIZE)
+			result.addLogEntries(entries.subList(idx, Math.min(idx + LogAppendBenchmark.BATCH_SIZE, entryCount)));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticData.delete(dir);
+	}
+}
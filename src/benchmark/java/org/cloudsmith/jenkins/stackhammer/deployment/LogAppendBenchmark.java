@@ -0,0 +1,92 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudsmith.jenkins.stackhammer.benchmark.SyntheticData;
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DeploymentResult#addLogEntries(List)} with batches of the size
+ * that a poll typically returns. The log grows during each iteration, starting
+ * from <code>entryCount</code> entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LogAppendBenchmark {
+	static final int BATCH_SIZE = 100;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int entryCount;
+
+	@Param({ "50" })
+	public int hostCount;
+
+	private List<LogEntry> entries;
+
+	private List<LogEntry> batch;
+
+	private File dir;
+
+	private DeploymentResult result;
+
+	@Benchmark
+	public int addLogEntries() throws IOException {
+		result.addLogEntries(batch);
+		return result.getLogEntryCount();
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws IOException {
+		dir = SyntheticData.createTempDir("deployment");
+		result = new DeploymentResult(dir);
+		for(int idx = 0; idx < entryCount; idx += BATCH_SIZE)
+			result.addLogEntries(entries.subList(idx, Math.min(idx + BATCH_SIZE, entryCount)));
+
+		// Make sure that the host index is maintained incrementally as in a report that is being viewed
+		result.getHostEntries();
+	}
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		entries = SyntheticData.logEntries(entryCount, hostCount);
+		batch = SyntheticData.logEntries(BATCH_SIZE, hostCount);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() {
+		SyntheticData.delete(dir);
+	}
+}
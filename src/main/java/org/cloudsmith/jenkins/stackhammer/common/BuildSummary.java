@@ -0,0 +1,220 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentReport;
+import org.cloudsmith.jenkins.stackhammer.validation.ValidationReport;
+
+/**
+ * A small record of the outcome of the Stack Hammer operations of one build. The
+ * record is written to a file of its own next to the build.xml when the build
+ * completes so that views that span many builds can read it without loading the
+ * builds and their results.
+ */
+public class BuildSummary {
+	/**
+	 * The outcome of one validation or deployment.
+	 */
+	public static class Operation {
+		public static final String VALIDATION = "validation";
+
+		public static final String DEPLOYMENT = "deployment";
+
+		private final String kind;
+
+		private final String stack;
+
+		private final boolean failed;
+
+		private final int errorCount;
+
+		private final int warningCount;
+
+		private final int hostCount;
+
+		private final PhaseTimings timings;
+
+		public Operation(String kind, String stack, boolean failed, int errorCount, int warningCount, int hostCount,
+				PhaseTimings timings) {
+			this.kind = kind;
+			this.stack = stack;
+			this.failed = failed;
+			this.errorCount = errorCount;
+			this.warningCount = warningCount;
+			this.hostCount = hostCount;
+			this.timings = timings;
+		}
+
+		public int getErrorCount() {
+			return errorCount;
+		}
+
+		/**
+		 * Returns the number of deployed hosts or <code>-1</code> for a validation.
+		 */
+		public int getHostCount() {
+			return hostCount;
+		}
+
+		/**
+		 * Returns {@link #VALIDATION} or {@link #DEPLOYMENT}.
+		 */
+		public String getKind() {
+			return kind;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public PhaseTimings getTimings() {
+			return timings == null
+					? new PhaseTimings()
+					: timings;
+		}
+
+		public int getWarningCount() {
+			return warningCount;
+		}
+
+		public boolean isFailed() {
+			return failed;
+		}
+	}
+
+	/**
+	 * The name of the file in the build directory.
+	 */
+	public static final String FILE_NAME = "stackhammer-summary.xml";
+
+	private static final Logger LOGGER = Logger.getLogger(BuildSummary.class.getName());
+
+	/**
+	 * Creates a summary of the Stack Hammer results in the given build.
+	 *
+	 * @param build
+	 *        The completed build
+	 * @return The summary or <code>null</code> if the build has no Stack Hammer results
+	 */
+	public static BuildSummary create(AbstractBuild<?, ?> build) {
+		List<Operation> operations = new ArrayList<Operation>();
+		for(StackOpResult<?> result : build.getActions(StackOpResult.class))
+			operations.add(result.summarize());
+		for(ValidationReport report : build.getActions(ValidationReport.class))
+			for(StackOpResult<?> result : report.getStacks())
+				operations.add(result.summarize());
+		for(DeploymentReport report : build.getActions(DeploymentReport.class))
+			for(StackOpResult<?> result : report.getStacks())
+				operations.add(result.summarize());
+		if(operations.isEmpty())
+			return null;
+
+		Result result = build.getResult();
+		return new BuildSummary(build.getNumber(), build.getTimeInMillis(), build.getDuration(), result == null
+				? null
+				: result.toString(), operations);
+	}
+
+	private static XmlFile getFile(File buildDir) {
+		return new XmlFile(new File(buildDir, FILE_NAME));
+	}
+
+	/**
+	 * Reads the summary in the given build directory.
+	 *
+	 * @param buildDir
+	 *        The root directory of a build
+	 * @return The summary or <code>null</code> if the build has no summary or if it could not be read
+	 */
+	public static BuildSummary load(File buildDir) {
+		XmlFile file = getFile(buildDir);
+		if(!file.exists())
+			return null;
+		try {
+			return (BuildSummary) file.read();
+		}
+		catch(IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to read " + file, e);
+			return null;
+		}
+	}
+
+	private final int number;
+
+	private final long timestamp;
+
+	private final long duration;
+
+	private final String result;
+
+	private final List<Operation> operations;
+
+	public BuildSummary(int number, long timestamp, long duration, String result, List<Operation> operations) {
+		this.number = number;
+		this.timestamp = timestamp;
+		this.duration = duration;
+		this.result = result;
+		this.operations = operations;
+	}
+
+	/**
+	 * Returns the duration of the build in milliseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public List<Operation> getOperations() {
+		return operations == null
+				? Collections.<Operation> emptyList()
+				: Collections.unmodifiableList(operations);
+	}
+
+	/**
+	 * Returns the result of the build, i.e. SUCCESS, UNSTABLE, FAILURE or ABORTED.
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * Returns the start time of the build.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Writes this summary to the given build directory.
+	 */
+	public void save(File buildDir) throws IOException {
+		getFile(buildDir).write(this);
+	}
+}
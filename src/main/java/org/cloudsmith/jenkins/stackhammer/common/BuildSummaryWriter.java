@@ -0,0 +1,60 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+
+/**
+ * Writes the {@link BuildSummary} of builds that have Stack Hammer results when
+ * the build completes. The result and the duration of the build are known at
+ * that point. The {@link TimingTrendAction} of the project is told when a summary
+ * has been written or a build has been deleted.
+ */
+@Extension
+public class BuildSummaryWriter extends RunListener<AbstractBuild<?, ?>> {
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BuildSummaryWriter() {
+		super((Class) AbstractBuild.class);
+	}
+
+	private static void invalidateTrend(AbstractBuild<?, ?> build) {
+		TimingTrendAction trend = build.getProject().getAction(TimingTrendAction.class);
+		if(trend != null)
+			trend.invalidate();
+	}
+
+	@Override
+	public void onCompleted(AbstractBuild<?, ?> build, TaskListener listener) {
+		BuildSummary summary = BuildSummary.create(build);
+		if(summary == null)
+			return;
+		try {
+			summary.save(build.getRootDir());
+		}
+		catch(IOException e) {
+			e.printStackTrace(listener.error("Unable to write the Stack Hammer summary"));
+		}
+		invalidateTrend(build);
+	}
+
+	@Override
+	public void onDeleted(AbstractBuild<?, ?> build) {
+		invalidateTrend(build);
+	}
+}
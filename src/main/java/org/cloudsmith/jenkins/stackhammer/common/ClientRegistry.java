@@ -0,0 +1,173 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.http.client.HttpClient;
+import org.cloudsmith.stackhammer.api.StackHammerModule;
+import org.cloudsmith.stackhammer.api.service.RepositoryService;
+import org.cloudsmith.stackhammer.api.service.StackHammerFactory;
+import org.cloudsmith.stackhammer.api.service.StackService;
+
+import com.google.inject.Binding;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.Elements;
+import com.google.inject.util.Modules;
+
+/**
+ * Plugin wide registry of Stack Hammer clients. Creating the Guice injector and
+ * the services is expensive so a client is created once per service URL and
+ * API key and then shared between all builds that use that combination.
+ * Clients that has not been used for {@link #IDLE_TIMEOUT} milliseconds are
+ * evicted.
+ */
+public class ClientRegistry {
+	/**
+	 * A long lived client for one service URL and API key.
+	 */
+	public static class Client {
+		private final StackHammerFactory factory;
+
+		private final HttpTransport transport;
+
+		private RepositoryService repositoryService;
+
+		private StackService stackService;
+
+		private long lastAccess;
+
+		Client(StackHammerFactory factory, HttpTransport transport) {
+			this.factory = factory;
+			this.transport = transport;
+			this.lastAccess = System.currentTimeMillis();
+		}
+
+		public StackHammerFactory getFactory() {
+			return factory;
+		}
+
+		public synchronized RepositoryService getRepositoryService() {
+			if(repositoryService == null)
+				repositoryService = factory.createRepositoryService();
+			return repositoryService;
+		}
+
+		public synchronized StackService getStackService() {
+			if(stackService == null)
+				stackService = factory.createStackService();
+			return stackService;
+		}
+
+		/**
+		 * Returns the HTTP transport that this client uses or <code>null</code> if it
+		 * uses the transport of the {@link StackHammerModule}.
+		 */
+		public HttpTransport getTransport() {
+			return transport;
+		}
+	}
+
+	/**
+	 * Number of milliseconds that a client can remain unused before it is evicted
+	 */
+	public static final long IDLE_TIMEOUT = 30L * 60L * 1000L;
+
+	private static final Map<String, Client> clients = new HashMap<String, Client>();
+
+	private static final Logger LOGGER = Logger.getLogger(ClientRegistry.class.getName());
+
+	/**
+	 * Checks that <code>module</code> binds {@link HttpClient}. A transport that overrides
+	 * a binding that the services don't use would silently be ignored.
+	 */
+	private static boolean bindsHttpClient(Module module) {
+		Key<HttpClient> key = Key.get(HttpClient.class);
+		for(Element element : Elements.getElements(module))
+			if(element instanceof Binding && key.equals(((Binding<?>) element).getKey()))
+				return true;
+		return false;
+	}
+
+	private static void evictIdle(long now) {
+		Iterator<Client> itor = clients.values().iterator();
+		while(itor.hasNext())
+			if(now - itor.next().lastAccess > IDLE_TIMEOUT)
+				itor.remove();
+	}
+
+	/**
+	 * Returns the client for the given <code>serviceURL</code> and <code>apiKey</code>. The
+	 * client is created if it doesn't exist.
+	 *
+	 * @param serviceURL
+	 *        The URL of the Stack Hammer service API
+	 * @param apiKey
+	 *        The API key to use when authenticating with the service
+	 * @param transport
+	 *        The HTTP transport or <code>null</code> to use the transport of the {@link StackHammerModule}.
+	 *        The transport is not used if the module doesn't bind {@link HttpClient}
+	 * @return The shared client
+	 */
+	public static synchronized Client getClient(String serviceURL, String apiKey, HttpTransport transport) {
+		long now = System.currentTimeMillis();
+		evictIdle(now);
+
+		String key = serviceURL + '\n' + apiKey + '\n' + transport;
+		Client client = clients.get(key);
+		if(client == null) {
+			URI uri = URI.create(serviceURL);
+			Module module = new StackHammerModule(uri.getScheme(), uri.getHost(), uri.getPort(), uri.getPath(), apiKey);
+			HttpTransport installed = null;
+			if(transport != null) {
+				if(bindsHttpClient(module)) {
+					module = Modules.override(module).with(transport.createModule());
+					installed = transport;
+				}
+				else
+					LOGGER.warning(
+						"The Stack Hammer API doesn't bind an HttpClient. The configured HTTP transport is not used");
+			}
+			Injector injector = Guice.createInjector(module);
+			client = new Client(injector.getInstance(StackHammerFactory.class), installed);
+			clients.put(key, client);
+			if(installed != null)
+				LOGGER.info("Created a client for " + serviceURL + " using HTTP transport " + installed +
+						". Requests are sent with Accept-Encoding: gzip,deflate");
+		}
+		client.lastAccess = now;
+		return client;
+	}
+
+	/**
+	 * Discards all clients and the connection pools of transports that are no longer
+	 * configured. Called when the global configuration changes so that new clients are
+	 * created using the new settings.
+	 *
+	 * @param transport
+	 *        The configured transport, whose pool is kept
+	 */
+	public static synchronized void invalidateAll(HttpTransport transport) {
+		clients.clear();
+		HttpTransport.releasePools(transport);
+	}
+}
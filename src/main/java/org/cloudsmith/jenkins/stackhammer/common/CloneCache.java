@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.cloudsmith.stackhammer.api.model.Diagnostic;
+import org.cloudsmith.stackhammer.api.model.Provider;
+import org.cloudsmith.stackhammer.api.model.Repository;
+import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
+import org.cloudsmith.stackhammer.api.service.RepositoryService;
+
+/**
+ * Plugin wide cache of successful clone results. A build that finds a result
+ * that is younger than the configured time to live skips the call to
+ * {@link RepositoryService#cloneRepository(Provider, String, String, String)}.
+ * Results with errors are never cached and an entry is invalidated when an
+ * operation that used it fails.
+ */
+public class CloneCache {
+	private static class Entry {
+		final ResultWithDiagnostic<Repository> result;
+
+		final long expires;
+
+		Entry(ResultWithDiagnostic<Repository> result, long expires) {
+			this.result = result;
+			this.expires = expires;
+		}
+	}
+
+	private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Returns the cached clone result for the given repository.
+	 *
+	 * @param serviceURL
+	 *        The URL of the service, part of the cache key
+	 * @param apiKey
+	 *        The API key used with the service, part of the cache key
+	 * @param owner
+	 *        The owner of the repository
+	 * @param name
+	 *        The name of the repository
+	 * @param branch
+	 *        The branch
+	 * @return The result or <code>null</code> if no valid result is cached, in which
+	 *         case the caller clones the repository and calls
+	 *         {@link #put(String, String, String, String, String, ResultWithDiagnostic, long)}
+	 */
+	public static ResultWithDiagnostic<Repository> get(String serviceURL, String apiKey, String owner, String name,
+			String branch) {
+		long now = System.currentTimeMillis();
+		synchronized(entries) {
+			evictExpired(now);
+			Entry entry = entries.get(key(serviceURL, apiKey, owner, name, branch));
+			return entry == null
+					? null
+					: entry.result;
+		}
+	}
+
+	/**
+	 * Caches the result of a call to
+	 * {@link RepositoryService#cloneRepository(Provider, String, String, String)}
+	 * unless it has errors.
+	 *
+	 * @param timeToLive
+	 *        The number of milliseconds the result remains valid. Zero or less disables the cache
+	 */
+	public static void put(String serviceURL, String apiKey, String owner, String name, String branch,
+			ResultWithDiagnostic<Repository> result, long timeToLive) {
+		if(timeToLive > 0 && result.getSeverity() != Diagnostic.ERROR) {
+			synchronized(entries) {
+				entries.put(
+					key(serviceURL, apiKey, owner, name, branch),
+					new Entry(result, System.currentTimeMillis() + timeToLive));
+			}
+		}
+	}
+
+	private static void evictExpired(long now) {
+		Iterator<Entry> itor = entries.values().iterator();
+		while(itor.hasNext())
+			if(itor.next().expires <= now)
+				itor.remove();
+	}
+
+	/**
+	 * Removes the result for the given repository from the cache.
+	 */
+	public static void invalidate(String serviceURL, String apiKey, String owner, String name, String branch) {
+		synchronized(entries) {
+			entries.remove(key(serviceURL, apiKey, owner, name, branch));
+		}
+	}
+
+	/**
+	 * Removes all results from the cache.
+	 */
+	public static void invalidateAll() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+
+	// The API key is part of the key so that a build never sees a result that its own key wouldn't give it
+	private static String key(String serviceURL, String apiKey, String owner, String name, String branch) {
+		return serviceURL + '\n' + apiKey + '\n' + owner + '/' + name + '\n' + branch;
+	}
+}
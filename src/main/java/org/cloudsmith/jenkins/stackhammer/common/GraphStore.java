@@ -0,0 +1,256 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.Functions;
+import hudson.model.AbstractBuild;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Stores the SVG graphs produced by Stack Hammer as gzipped files in the build
+ * directory and serves them from there. The base64 encoded graph is decoded
+ * and passed through the {@link GraphTrimmer} once, the first time the graph is
+ * requested. The path of the zoom script depends on the Jenkins version, so
+ * the stored graph refers to it using {@link #RESOURCE_PATH_TOKEN} and the
+ * current path is filled in when the graph is served. Since a served graph
+ * only changes with that path, the responses allow browsers to cache it
+ * indefinitely.
+ */
+public class GraphStore {
+	private static final String GRAPH_DIR = "stackhammer-graphs";
+
+	private static final String ONE_YEAR = "max-age=31536000";
+
+	/**
+	 * Maps each byte to one char so that the token can be replaced without decoding the graph
+	 */
+	private static final String ISO_8859_1 = "ISO-8859-1";
+
+	private static final Logger LOGGER = Logger.getLogger(GraphStore.class.getName());
+
+	/**
+	 * Stands in for the path of the plugin resources in stored graphs
+	 */
+	static final String RESOURCE_PATH_TOKEN = "@STACKHAMMER_RESOURCES@";
+
+	/**
+	 * Reads a stored graph and replaces {@link #RESOURCE_PATH_TOKEN} with the given path.
+	 */
+	private static byte[] resolve(File graphFile, String resourcePath) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) graphFile.length() * 4);
+		InputStream in = new GZIPInputStream(new FileInputStream(graphFile));
+		try {
+			copy(in, bytes);
+		}
+		finally {
+			in.close();
+		}
+		return bytes.toString(ISO_8859_1).replace(RESOURCE_PATH_TOKEN, resourcePath).getBytes(ISO_8859_1);
+	}
+
+	private static void write(File file, String base64Graph, String resourcePath) throws IOException {
+		InputStream in = new Base64InputStream(new ByteArrayInputStream(base64Graph.getBytes("US-ASCII")));
+		try {
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+			try {
+				if(resourcePath != null)
+					GraphTrimmer.stripFixedSize(in, out, resourcePath);
+				else
+					copy(in, out);
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buf = new byte[8192];
+		int count;
+		while((count = in.read(buf)) > 0)
+			out.write(buf, 0, count);
+	}
+
+	/**
+	 * Returns the file used for the graph with the given name in the given build.
+	 *
+	 * @param build
+	 *        The build that owns the graph
+	 * @param name
+	 *        The name of the graph, unique within the build
+	 * @return The file. It might not exist yet
+	 */
+	public static File getGraphFile(AbstractBuild<?, ?> build, String name) {
+		try {
+			return new File(new File(build.getRootDir(), GRAPH_DIR), URLEncoder.encode(name, "UTF-8") + ".svg.gz");
+		}
+		catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean matchesETag(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null)
+			return false;
+		for(String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if(tag.equals("*") || tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Serves a graph. The graph file is created from <code>base64Graph</code> unless it exists already.
+	 *
+	 * @param req
+	 *        The request
+	 * @param rsp
+	 *        The response
+	 * @param graphFile
+	 *        The file obtained from {@link #getGraphFile(AbstractBuild, String)}
+	 * @param base64Graph
+	 *        The base64 encoded SVG graph
+	 * @throws IOException
+	 */
+	public static void serve(StaplerRequest req, StaplerResponse rsp, File graphFile, String base64Graph)
+			throws IOException {
+		if(!graphFile.exists())
+			store(graphFile, base64Graph, RESOURCE_PATH_TOKEN);
+
+		String resourcePath = Functions.getResourcePath() + "/plugin/stackhammer";
+		long lastModified = graphFile.lastModified();
+		String etag = '"' + Long.toHexString(graphFile.length()) + '-' + Long.toHexString(lastModified) + '-' +
+				Integer.toHexString(resourcePath.hashCode()) + '"';
+		rsp.setHeader("ETag", etag);
+		rsp.setDateHeader("Last-Modified", lastModified);
+		rsp.setHeader("Cache-Control", ONE_YEAR);
+		rsp.setHeader("Vary", "Accept-Encoding");
+
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if(ifNoneMatch != null) {
+			if(matchesETag(ifNoneMatch, etag)) {
+				rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+		else {
+			long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			// HTTP dates have a resolution of one second
+			if(ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000) {
+				rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+
+		rsp.setContentType("image/svg+xml");
+		String acceptEncoding = req.getHeader("Accept-Encoding");
+		boolean gzip = acceptEncoding != null && acceptEncoding.indexOf("gzip") >= 0;
+		byte[] svgData = resolve(graphFile, resourcePath);
+		if(gzip) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) graphFile.length() + 64);
+			OutputStream zipped = new GZIPOutputStream(bytes);
+			zipped.write(svgData);
+			zipped.close();
+			svgData = bytes.toByteArray();
+			rsp.setHeader("Content-Encoding", "gzip");
+		}
+		rsp.setContentLength(svgData.length);
+
+		OutputStream out = rsp.getOutputStream();
+		try {
+			out.write(svgData);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Serves a graph that has no build directory to be stored in. The graph is decoded
+	 * on each request and the response is not cached.
+	 *
+	 * @param rsp
+	 *        The response
+	 * @param base64Graph
+	 *        The base64 encoded SVG graph
+	 * @throws IOException
+	 */
+	public static void serveDecoded(StaplerResponse rsp, String base64Graph) throws IOException {
+		byte[] svgData = Base64.decodeBase64(base64Graph);
+		rsp.setContentType("image/svg+xml");
+		rsp.setContentLength(svgData.length);
+		OutputStream out = rsp.getOutputStream();
+		try {
+			out.write(svgData);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Decodes the graph, adds the zoom controls, and writes it gzipped to
+	 * <code>graphFile</code>. The graph is stored without zoom controls if it
+	 * cannot be processed. The file is first written under a temporary name and
+	 * then renamed so that a partially written file is never served.
+	 *
+	 * @param resourcePath
+	 *        The path used to resolve the zoom script, normally {@link #RESOURCE_PATH_TOKEN}
+	 */
+	static void store(File graphFile, String base64Graph, String resourcePath) throws IOException {
+		File dir = graphFile.getParentFile();
+		if(!(dir.isDirectory() || dir.mkdirs()))
+			throw new IOException("Unable to create directory " + dir);
+
+		File tmpFile = File.createTempFile("graph", ".tmp", dir);
+		try {
+			try {
+				write(tmpFile, base64Graph, resourcePath);
+			}
+			catch(IOException e) {
+				LOGGER.log(Level.WARNING, "Unable to add zoom controls to " + graphFile, e);
+				write(tmpFile, base64Graph, null);
+			}
+			if(!(tmpFile.renameTo(graphFile) || graphFile.exists()))
+				throw new IOException("Unable to rename " + tmpFile + " to " + graphFile);
+		}
+		finally {
+			tmpFile.delete();
+		}
+	}
+}
@@ -13,63 +13,232 @@
  */
 package org.cloudsmith.jenkins.stackhammer.common;
 
-import hudson.Functions;
-
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileReader;
-import java.net.URL;
-
-import javax.xml.transform.Templates;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
-import org.xml.sax.InputSource;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
 
+/**
+ * Rewrites SVG graphs so that they can be zoomed and panned in the browser. The
+ * graph is streamed through a StAX reader and writer in one pass. The style,
+ * script, and controls that are injected are read once from the <code>zoom.svg</code>
+ * resource.
+ */
 public class GraphTrimmer {
-	private static Templates STRIP_FIXED_SIZE_TEMPLATE;
+	private static final String SVG_NS = "http://www.w3.org/2000/svg";
+
+	private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+
+	private static final String XLINK_PREFIX = "xlink";
+
+	private static final String ZOOM_SCRIPT = "zoom.js";
+
+	private static final QName ID = new QName("id");
+
+	private static final QName HEIGHT = new QName("height");
+
+	private static final QName WIDTH = new QName("width");
+
+	private static final QName HREF = new QName(XLINK_NS, "href");
+
+	private static final XMLInputFactory inputFactory;
+
+	private static final XMLOutputFactory outputFactory;
+
+	private static final XMLEventFactory eventFactory;
+
+	private static final List<XMLEvent> HEADER;
+
+	private static final List<XMLEvent> CONTROLS;
 
 	static {
-		TransformerFactory tFactory = TransformerFactory.newInstance();
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		outputFactory = XMLOutputFactory.newInstance();
+		eventFactory = XMLEventFactory.newInstance();
+
+		List<XMLEvent> header = new ArrayList<XMLEvent>();
+		List<XMLEvent> controls = new ArrayList<XMLEvent>();
 		try {
-			URL resourcePath = GraphTrimmer.class.getResource("zoom.xsl");
-			File file = new File(resourcePath.toURI());
-			BufferedReader reader = new BufferedReader(new FileReader(file));
+			InputStream in = GraphTrimmer.class.getResourceAsStream("zoom.svg");
+			if(in == null)
+				throw new IllegalStateException("Unable to find resource zoom.svg");
 			try {
-				STRIP_FIXED_SIZE_TEMPLATE = tFactory.newTemplates(new StreamSource(reader));
+				XMLEventReader reader = inputFactory.createXMLEventReader(in);
+				List<XMLEvent> current = null;
+				int depth = 0;
+				while(reader.hasNext()) {
+					XMLEvent event = reader.nextEvent();
+					if(event.isStartElement()) {
+						if(++depth == 2) {
+							Attribute id = event.asStartElement().getAttributeByName(ID);
+							current = id != null && "controls".equals(id.getValue())
+									? controls
+									: header;
+							continue;
+						}
+					}
+					else if(event.isEndElement()) {
+						if(depth-- == 2) {
+							current = null;
+							continue;
+						}
+					}
+					if(current != null)
+						current.add(event);
+				}
+				reader.close();
 			}
 			finally {
-				reader.close();
+				in.close();
 			}
 		}
+		catch(RuntimeException e) {
+			throw e;
+		}
 		catch(Exception e) {
 			throw new IllegalStateException(e);
 		}
+		HEADER = Collections.unmodifiableList(header);
+		CONTROLS = Collections.unmodifiableList(controls);
+	}
+
+	private static String attributeValue(StartElement element, QName name) {
+		Attribute attr = element.getAttributeByName(name);
+		return attr == null
+				? ""
+				: attr.getValue();
+	}
+
+	/**
+	 * Returns the namespaces declared by the root element, amended with the namespaces
+	 * used by the injected elements when needed.
+	 */
+	private static Iterator<Namespace> rootNamespaces(StartElement root) {
+		List<Namespace> namespaces = new ArrayList<Namespace>();
+		boolean hasXLink = false;
+		for(Iterator<?> itor = root.getNamespaces(); itor.hasNext();) {
+			Namespace ns = (Namespace) itor.next();
+			if(XLINK_PREFIX.equals(ns.getPrefix()))
+				hasXLink = true;
+			namespaces.add(ns);
+		}
+		if(!SVG_NS.equals(root.getNamespaceContext().getNamespaceURI("")))
+			namespaces.add(eventFactory.createNamespace(SVG_NS));
+		if(!hasXLink)
+			namespaces.add(eventFactory.createNamespace(XLINK_PREFIX, XLINK_NS));
+		return namespaces.iterator();
+	}
+
+	private static void inject(List<XMLEvent> events, XMLEventWriter writer, String resourcePath)
+			throws XMLStreamException {
+		for(XMLEvent event : events) {
+			if(event.isStartElement()) {
+				StartElement element = event.asStartElement();
+				Attribute href = element.getAttributeByName(HREF);
+				if(href != null && ZOOM_SCRIPT.equals(href.getValue())) {
+					List<Attribute> attrs = new ArrayList<Attribute>();
+					attrs.add(eventFactory.createAttribute(href.getName(), resourcePath + '/' + ZOOM_SCRIPT));
+					event = eventFactory.createStartElement(
+						element.getName(), attrs.iterator(), element.getNamespaces());
+				}
+			}
+			writer.add(event);
+		}
 	}
 
-	public static byte[] stripFixedSize(byte[] bytes) {
+	/**
+	 * Buffered variant of {@link #stripFixedSize(InputStream, OutputStream, String)}.
+	 */
+	public static byte[] stripFixedSize(byte[] bytes, String resourcePath) {
 		try {
-			Transformer transformer = STRIP_FIXED_SIZE_TEMPLATE.newTransformer();
-			ByteArrayOutputStream result = new ByteArrayOutputStream();
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-			SAXSource saxSource = new SAXSource(reader, new InputSource(new ByteArrayInputStream(bytes)));
-			transformer.setParameter("stackhammer", Functions.getResourcePath() + "/plugin/stackhammer");
-			transformer.transform(saxSource, new StreamResult(result));
+			ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length + 4096);
+			stripFixedSize(new ByteArrayInputStream(bytes), result, resourcePath);
 			return result.toByteArray();
 		}
-		catch(RuntimeException e) {
-			throw e;
-		}
-		catch(Exception e) {
+		catch(IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * Copies the SVG document in <code>in</code> to <code>out</code> and injects the zoom
+	 * and pan controls. The root element gets an <code>onload</code> handler that
+	 * replaces the fixed size of the graph so that it fills the browser window.
+	 *
+	 * @param in
+	 *        The SVG document to read
+	 * @param out
+	 *        The stream that receives the result
+	 * @param resourcePath
+	 *        The path used to resolve the zoom script, i.e. the path of the plugin resources
+	 * @throws IOException
+	 *         if reading or writing fails or if the input is not well formed XML
+	 */
+	public static void stripFixedSize(InputStream in, OutputStream out, String resourcePath) throws IOException {
+		try {
+			XMLEventReader reader = inputFactory.createXMLEventReader(in);
+			XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+			int depth = 0;
+			boolean rootIsSvg = false;
+			while(reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				switch(event.getEventType()) {
+					case XMLEvent.DTD:
+					case XMLEvent.ENTITY_REFERENCE:
+						// The DTD is not needed by browsers and is not loaded
+						continue;
+					case XMLEvent.START_ELEMENT:
+						if(depth++ == 0) {
+							StartElement root = event.asStartElement();
+							rootIsSvg = SVG_NS.equals(root.getName().getNamespaceURI()) &&
+									"svg".equals(root.getName().getLocalPart());
+							if(rootIsSvg) {
+								List<Attribute> attrs = new ArrayList<Attribute>();
+								attrs.add(eventFactory.createAttribute("onload", "init(evt, '" +
+										attributeValue(root, WIDTH) + "', '" + attributeValue(root, HEIGHT) + "')"));
+								for(Iterator<?> itor = root.getAttributes(); itor.hasNext();)
+									attrs.add((Attribute) itor.next());
+								writer.add(eventFactory.createStartElement(
+									root.getName(), attrs.iterator(), rootNamespaces(root)));
+								inject(HEADER, writer, resourcePath);
+								continue;
+							}
+						}
+						break;
+					case XMLEvent.END_ELEMENT:
+						if(--depth == 0 && rootIsSvg)
+							inject(CONTROLS, writer, resourcePath);
+						break;
+				}
+				writer.add(event);
+			}
+			writer.flush();
+			writer.close();
+			reader.close();
+		}
+		catch(XMLStreamException e) {
+			IOException ioe = new IOException("Unable to process SVG graph: " + e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+	}
 }
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.ContentEncodingHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.cloudsmith.stackhammer.api.StackHammerModule;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+
+/**
+ * The HTTP transport used by the Stack Hammer clients. All clients in a JVM that use
+ * the same settings share one pool of keep-alive connections, and every request asks
+ * for a gzip compressed response.
+ * <p>
+ * The transport is installed by a module that overrides the binding of {@link HttpClient}
+ * in the {@link StackHammerModule}. This relies on the services obtaining their
+ * client from the injector, which the {@link ClientRegistry} verifies before it installs
+ * the transport.
+ * </p>
+ */
+public class HttpTransport implements Serializable {
+	/**
+	 * The maximum number of pooled connections when none has been configured
+	 */
+	public static final int DEFAULT_POOL_SIZE = 20;
+
+	/**
+	 * The number of seconds to wait for a connection when no timeout has been configured
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30;
+
+	/**
+	 * The number of seconds to wait for data when no timeout has been configured. The
+	 * client of the Stack Hammer API waits forever, which lets a dropped connection block
+	 * a build until it is aborted. The limit is well above the time the service needs to
+	 * answer a validation, the longest call that the builds make.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT = 300;
+
+	/**
+	 * The number of seconds that an unused connection is kept in the pool
+	 */
+	public static final long IDLE_TIMEOUT = 60;
+
+	private static final long serialVersionUID = 1466317990736011364L;
+
+	private static final Map<HttpTransport, ClientConnectionManager> pools =
+			new HashMap<HttpTransport, ClientConnectionManager>();
+
+	/**
+	 * Releases the pools of all transports except <code>retained</code>. New clients
+	 * get new pools. The idle connections of a released pool are closed at once. Its
+	 * connections that are in use by running builds are closed when the builds are done
+	 * with them, and the pool shuts down when the last client that uses it is collected.
+	 *
+	 * @param retained
+	 *        The transport whose pool is kept or <code>null</code> to release all pools
+	 */
+	public static synchronized void releasePools(HttpTransport retained) {
+		Iterator<Map.Entry<HttpTransport, ClientConnectionManager>> itor = pools.entrySet().iterator();
+		while(itor.hasNext()) {
+			Map.Entry<HttpTransport, ClientConnectionManager> entry = itor.next();
+			if(!entry.getKey().equals(retained)) {
+				entry.getValue().closeIdleConnections(0, TimeUnit.SECONDS);
+				itor.remove();
+			}
+		}
+	}
+
+	private static synchronized ClientConnectionManager getPool(HttpTransport transport) {
+		ClientConnectionManager pool = pools.get(transport);
+		if(pool == null) {
+			ThreadSafeClientConnManager tscm = new ThreadSafeClientConnManager(SchemeRegistryFactory.createDefault());
+			tscm.setMaxTotal(transport.poolSize);
+
+			// All requests go to the same service so one route may use the whole pool
+			tscm.setDefaultMaxPerRoute(transport.poolSize);
+			pool = tscm;
+			pools.put(transport, pool);
+		}
+		pool.closeExpiredConnections();
+		pool.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS);
+		return pool;
+	}
+
+	private final int poolSize;
+
+	private final int connectTimeout;
+
+	private final int readTimeout;
+
+	/**
+	 * @param poolSize
+	 *        The maximum number of pooled connections
+	 * @param connectTimeout
+	 *        The number of seconds to wait for a connection
+	 * @param readTimeout
+	 *        The number of seconds to wait for data
+	 */
+	public HttpTransport(int poolSize, int connectTimeout, int readTimeout) {
+		this.poolSize = poolSize;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Creates a client that uses the shared pool of this transport. The client
+	 * adds an <code>Accept-Encoding: gzip,deflate</code> header to each request and
+	 * decompresses the responses.
+	 */
+	public HttpClient createHttpClient() {
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeout * 1000);
+		HttpConnectionParams.setSoTimeout(params, readTimeout * 1000);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		HttpConnectionParams.setTcpNoDelay(params, true);
+		return new ContentEncodingHttpClient(getPool(this), params);
+	}
+
+	/**
+	 * Creates the module that binds {@link HttpClient} to a client that uses this transport.
+	 */
+	public Module createModule() {
+		return new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(HttpClient.class).toInstance(createHttpClient());
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof HttpTransport))
+			return false;
+		HttpTransport that = (HttpTransport) o;
+		return poolSize == that.poolSize && connectTimeout == that.connectTimeout && readTimeout == that.readTimeout;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	@Override
+	public int hashCode() {
+		return (poolSize * 31 + connectTimeout) * 31 + readTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return "pool=" + poolSize + ",connect=" + connectTimeout + ",read=" + readTimeout;
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.mapper.CannotResolveClassException;
+import com.thoughtworks.xstream.mapper.Mapper;
+import com.thoughtworks.xstream.mapper.MapperWrapper;
+
+/**
+ * Moves objects of the Stack Hammer API model between the master and the build nodes.
+ * The API doesn't guarantee that the model classes are {@link java.io.Serializable}, so
+ * the objects are marshalled with XStream, the same way they are stored in the build
+ * records, and sent as strings.
+ * <p>
+ * The master unmarshals XML that was produced by a build node, so only the
+ * model classes, the JDK types that hold their values and arrays of those can
+ * be unmarshalled. Any other type is rejected before it is instantiated.
+ * </p>
+ */
+public class ModelTransfer {
+	/**
+	 * Rejects the types that {@link ModelTransfer#isAllowed(Class)} doesn't accept.
+	 */
+	private static class AllowListMapper extends MapperWrapper {
+		AllowListMapper(Mapper wrapped) {
+			super(wrapped);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public Class realClass(String elementName) {
+			Class type = super.realClass(elementName);
+			if(!isAllowed(type))
+				throw new CannotResolveClassException(elementName + " is not a Stack Hammer model type");
+			return type;
+		}
+	}
+
+	private static final String MODEL_PACKAGE = "org.cloudsmith.stackhammer.api.model.";
+
+	private static final Set<Class<?>> JDK_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+		String.class, Boolean.class, Byte.class, Character.class, Short.class, Integer.class, Long.class,
+		Float.class, Double.class, BigInteger.class, BigDecimal.class, Date.class, ArrayList.class,
+		LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class, HashSet.class, LinkedHashSet.class,
+		TreeSet.class, Collections.emptyList().getClass(), Collections.emptyMap().getClass(),
+		Collections.emptySet().getClass(), Mapper.Null.class));
+
+	private static final XStream XSTREAM = new XStream() {
+		@Override
+		protected MapperWrapper wrapMapper(MapperWrapper next) {
+			return new AllowListMapper(next);
+		}
+	};
+
+	static {
+		// The model classes are only visible to the class loader of the plugin
+		XSTREAM.setClassLoader(ModelTransfer.class.getClassLoader());
+	}
+
+	/**
+	 * Checks if a type may be unmarshalled.
+	 */
+	static boolean isAllowed(Class<?> type) {
+		while(type.isArray())
+			type = type.getComponentType();
+		return type.isPrimitive() || JDK_TYPES.contains(type) || type.getName().startsWith(MODEL_PACKAGE);
+	}
+
+	/**
+	 * Unmarshals a model object.
+	 *
+	 * @param xml
+	 *        The XML obtained from {@link #toXML(Object)}, possibly <code>null</code>
+	 * @return The model object or <code>null</code>
+	 * @throws com.thoughtworks.xstream.XStreamException
+	 *         if the XML contains a type that isn't allowed
+	 */
+	public static Object fromXML(String xml) {
+		return xml == null
+				? null
+				: XSTREAM.fromXML(xml);
+	}
+
+	/**
+	 * Reads a model object written by {@link #writeModel(ObjectOutputStream, Object)}.
+	 */
+	public static Object readModel(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		return fromXML((String) in.readObject());
+	}
+
+	/**
+	 * Marshals a model object.
+	 *
+	 * @param model
+	 *        The model object, possibly <code>null</code>
+	 * @return The XML or <code>null</code>
+	 */
+	public static String toXML(Object model) {
+		return model == null
+				? null
+				: XSTREAM.toXML(model);
+	}
+
+	/**
+	 * Writes a model object to a stream. Used by the <code>writeObject</code> methods of
+	 * serializable classes that hold model objects.
+	 */
+	public static void writeModel(ObjectOutputStream out, Object model) throws IOException {
+		out.writeObject(toXML(model));
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.io.Serializable;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Time spent in each phase of a Stack Hammer operation. All times are in
+ * milliseconds. A time of <code>-1</code> means that the phase was not
+ * performed.
+ */
+@ExportedBean(defaultVisibility = 999)
+public class PhaseTimings implements Serializable {
+	private static final long serialVersionUID = -3705530436446937302L;
+
+	private long cloneTime = -1;
+
+	private long validateTime = -1;
+
+	private long deployTime = -1;
+
+	private long queueTime = -1;
+
+	private long pollTime = -1;
+
+	private int pollCount;
+
+	private long entriesReceived;
+
+	private long bytesReceived;
+
+	private long throttleTime;
+
+	private int throttleQueueDepth;
+
+	/**
+	 * Records a wait for a permit from the {@link ServiceThrottle}.
+	 *
+	 * @param waitTime
+	 *        The number of milliseconds that the call waited
+	 * @param queueDepth
+	 *        The number of calls that were waiting when the call arrived
+	 */
+	public synchronized void addThrottleWait(long waitTime, int queueDepth) {
+		throttleTime += waitTime;
+		throttleQueueDepth = Math.max(throttleQueueDepth, queueDepth);
+	}
+
+	/**
+	 * Returns the size of the received log entries as stored in the build.
+	 */
+	@Exported
+	public synchronized long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Returns the time spent verifying the clone of the repository.
+	 */
+	@Exported
+	public synchronized long getCloneTime() {
+		return cloneTime;
+	}
+
+	/**
+	 * Returns the time spent ordering the deployment.
+	 */
+	@Exported
+	public synchronized long getDeployTime() {
+		return deployTime;
+	}
+
+	/**
+	 * Returns the number of log entries received from the service, including entries that
+	 * were sent more than once.
+	 */
+	@Exported
+	public synchronized long getEntriesReceived() {
+		return entriesReceived;
+	}
+
+	/**
+	 * Returns the number of times the deployment job was polled.
+	 */
+	@Exported
+	public synchronized int getPollCount() {
+		return pollCount;
+	}
+
+	/**
+	 * Returns the time from the order to deploy until the job completed or the polling stopped.
+	 */
+	@Exported
+	public synchronized long getPollTime() {
+		return pollTime;
+	}
+
+	/**
+	 * Returns the time from the order to deploy until the job left the scheduled state.
+	 */
+	@Exported
+	public synchronized long getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * Returns the largest number of calls that were waiting ahead of a call of this
+	 * operation in the {@link ServiceThrottle}.
+	 */
+	@Exported
+	public synchronized int getThrottleQueueDepth() {
+		return throttleQueueDepth;
+	}
+
+	/**
+	 * Returns the total time that the calls of this operation waited in the {@link ServiceThrottle}.
+	 */
+	@Exported
+	public synchronized long getThrottleTime() {
+		return throttleTime;
+	}
+
+	/**
+	 * Returns the time spent validating the stack.
+	 */
+	@Exported
+	public synchronized long getValidateTime() {
+		return validateTime;
+	}
+
+	public synchronized void setBytesReceived(long bytesReceived) {
+		this.bytesReceived = bytesReceived;
+	}
+
+	public synchronized void setCloneTime(long cloneTime) {
+		this.cloneTime = cloneTime;
+	}
+
+	public synchronized void setDeployTime(long deployTime) {
+		this.deployTime = deployTime;
+	}
+
+	public synchronized void setEntriesReceived(long entriesReceived) {
+		this.entriesReceived = entriesReceived;
+	}
+
+	public synchronized void setPollCount(int pollCount) {
+		this.pollCount = pollCount;
+	}
+
+	public synchronized void setPollTime(long pollTime) {
+		this.pollTime = pollTime;
+	}
+
+	public synchronized void setQueueTime(long queueTime) {
+		this.queueTime = queueTime;
+	}
+
+	public synchronized void setValidateTime(long validateTime) {
+		this.validateTime = validateTime;
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of calls of each {@link Kind} that the builds of this Jenkins instance
+ * make concurrently to one Stack Hammer Service. Calls beyond the limit wait in a fair,
+ * first come first served, queue.
+ * <p>
+ * The throttle lives on the master. Callables that execute on an agent reach it through an
+ * exported {@link Gate}. Each execution gets its own {@link Session} that is closed on the
+ * master when the execution ends, so permits are returned even if the agent is lost or the
+ * build is aborted while a permit is held.
+ * </p>
+ */
+public class ServiceThrottle {
+	/**
+	 * The outcome of a wait for a permit.
+	 */
+	public static class Admission implements Serializable {
+		private static final long serialVersionUID = 2964213092860813418L;
+
+		private final int limit;
+
+		private final int queueDepth;
+
+		private final long waitTime;
+
+		Admission(int limit, int queueDepth, long waitTime) {
+			this.limit = limit;
+			this.queueDepth = queueDepth;
+			this.waitTime = waitTime;
+		}
+
+		/**
+		 * Returns the maximum number of concurrent calls of the kind or zero if there is no limit.
+		 */
+		public int getLimit() {
+			return limit;
+		}
+
+		/**
+		 * Returns the number of calls that were waiting when the call arrived or -1 if
+		 * the call didn't have to wait.
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * Returns the number of milliseconds that the call waited for its permit.
+		 */
+		public long getWaitTime() {
+			return waitTime;
+		}
+
+		/**
+		 * Returns <code>true</code> if the call had to wait for a permit.
+		 */
+		public boolean isQueued() {
+			return queueDepth >= 0;
+		}
+	}
+
+	/**
+	 * Hands out the permits of one execution of a {@link StackOpCallable}.
+	 */
+	public interface Gate {
+		/**
+		 * Waits for a permit to make a call of the given kind.
+		 *
+		 * @throws InterruptedException
+		 *         if the wait was interrupted
+		 */
+		Admission enter(Kind kind) throws IOException, InterruptedException;
+
+		/**
+		 * Returns a permit obtained from {@link #enter(Kind)}.
+		 */
+		void leave(Kind kind) throws IOException;
+	}
+
+	/**
+	 * The kinds of calls that are throttled.
+	 */
+	public enum Kind {
+		CLONE("clone"), VALIDATION("validation"), DEPLOYMENT("deployment");
+
+		private final String label;
+
+		private Kind(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * A {@link Gate} that remembers the permits it holds so that they can be returned
+	 * when the execution ends.
+	 */
+	public class Session implements Gate {
+		private final int[] held = new int[Kind.values().length];
+
+		private boolean closed;
+
+		/**
+		 * Returns the permits that are still held.
+		 */
+		public synchronized void close() {
+			closed = true;
+			for(Kind kind : Kind.values()) {
+				Semaphore permits = semaphores[kind.ordinal()];
+				if(permits != null && held[kind.ordinal()] > 0)
+					permits.release(held[kind.ordinal()]);
+				held[kind.ordinal()] = 0;
+			}
+		}
+
+		public Admission enter(Kind kind) throws InterruptedException {
+			Semaphore permits = semaphores[kind.ordinal()];
+			int limit = limits[kind.ordinal()];
+			if(permits == null)
+				return new Admission(limit, -1, 0);
+
+			Admission admission;
+			if(permits.tryAcquire())
+				admission = new Admission(limit, -1, 0);
+			else {
+				int queueDepth = permits.getQueueLength();
+				long start = System.currentTimeMillis();
+				permits.acquire();
+				admission = new Admission(limit, queueDepth, System.currentTimeMillis() - start);
+			}
+
+			synchronized(this) {
+				if(closed) {
+					// The execution ended while we were waiting
+					permits.release();
+					throw new InterruptedException("The operation has ended");
+				}
+				++held[kind.ordinal()];
+			}
+			return admission;
+		}
+
+		public synchronized void leave(Kind kind) {
+			Semaphore permits = semaphores[kind.ordinal()];
+			if(permits != null && held[kind.ordinal()] > 0) {
+				--held[kind.ordinal()];
+				permits.release();
+			}
+		}
+	}
+
+	private static final Map<String, ServiceThrottle> throttles = new HashMap<String, ServiceThrottle>();
+
+	/**
+	 * Returns the throttle of a service. A new throttle replaces the current one when the
+	 * limits change. Calls that hold permits of the old throttle return them to that throttle,
+	 * so for a short while after a change more calls than the new limits allow may be made.
+	 *
+	 * @param serviceURL
+	 *        The URL of the service
+	 * @param cloneLimit
+	 *        The maximum number of concurrent clone calls or zero for no limit
+	 * @param validationLimit
+	 *        The maximum number of concurrent validation calls or zero for no limit
+	 * @param deploymentLimit
+	 *        The maximum number of concurrent deployment calls or zero for no limit
+	 * @return The throttle
+	 */
+	public static synchronized ServiceThrottle getInstance(String serviceURL, int cloneLimit, int validationLimit,
+			int deploymentLimit) {
+		int[] limits = new int[] { cloneLimit, validationLimit, deploymentLimit };
+		ServiceThrottle throttle = throttles.get(serviceURL);
+		if(throttle == null || !Arrays.equals(throttle.limits, limits)) {
+			throttle = new ServiceThrottle(limits);
+			throttles.put(serviceURL, throttle);
+		}
+		return throttle;
+	}
+
+	private final int[] limits;
+
+	private final Semaphore[] semaphores;
+
+	private ServiceThrottle(int[] limits) {
+		this.limits = limits;
+		semaphores = new Semaphore[limits.length];
+		for(int idx = 0; idx < limits.length; ++idx)
+			if(limits[idx] > 0)
+				semaphores[idx] = new Semaphore(limits[idx], true);
+	}
+
+	/**
+	 * Returns the number of calls of the given kind that are waiting for a permit.
+	 */
+	public int getQueueDepth(Kind kind) {
+		Semaphore permits = semaphores[kind.ordinal()];
+		return permits == null
+				? 0
+				: permits.getQueueLength();
+	}
+
+	/**
+	 * Starts a new session. The caller must close the session when the execution ends.
+	 */
+	public Session openSession() {
+		return new Session();
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalesces identical operations that run at the same time. The first caller that
+ * {@link #join(Object) joins} a key becomes the leader and performs the operation. Callers
+ * that join the same key before the leader has {@link #land(Flight, Object) landed} wait
+ * for the outcome of the leader instead of performing the operation themselves.
+ *
+ * @param <K>
+ *        The type of the key that identifies an operation
+ * @param <V>
+ *        The type of the outcome of an operation
+ */
+public class SingleFlight<K, V> {
+	/**
+	 * The state of one operation in progress, shared by the leader and the followers.
+	 */
+	private static class Landing<V> {
+		private final CountDownLatch landed = new CountDownLatch(1);
+
+		private V outcome;
+
+		synchronized V getOutcome() {
+			return outcome;
+		}
+
+		synchronized void setOutcome(V outcome) {
+			this.outcome = outcome;
+		}
+	}
+
+	/**
+	 * The part that one caller plays in an operation.
+	 */
+	public static class Flight<V> {
+		private final Object key;
+
+		private final Landing<V> landing;
+
+		private final boolean leader;
+
+		private Flight(Object key, Landing<V> landing, boolean leader) {
+			this.key = key;
+			this.landing = landing;
+			this.leader = leader;
+		}
+
+		/**
+		 * Waits for the leader to land.
+		 *
+		 * @return The outcome of the leader, possibly <code>null</code>
+		 * @throws InterruptedException
+		 *         if the wait was interrupted
+		 */
+		public V await() throws InterruptedException {
+			landing.landed.await();
+			return landing.getOutcome();
+		}
+
+		/**
+		 * Returns <code>true</code> if the caller that joined must perform the operation
+		 * and then {@link SingleFlight#land(Flight, Object) land} the flight.
+		 */
+		public boolean isLeader() {
+			return leader;
+		}
+	}
+
+	private final Map<K, Landing<V>> flights = new HashMap<K, Landing<V>>();
+
+	/**
+	 * Joins the operation identified by <code>key</code>. The caller becomes the leader
+	 * if no such operation is in progress. A leader must always land its flight, typically
+	 * in a <code>finally</code> block, or the followers will wait forever.
+	 *
+	 * @param key
+	 *        The key of the operation
+	 * @return The flight to follow or to lead
+	 */
+	public synchronized Flight<V> join(K key) {
+		Landing<V> landing = flights.get(key);
+		if(landing == null) {
+			landing = new Landing<V>();
+			flights.put(key, landing);
+			return new Flight<V>(key, landing, true);
+		}
+		return new Flight<V>(key, landing, false);
+	}
+
+	/**
+	 * Ends an operation and hands its outcome to the callers that are waiting for it.
+	 * Callers that join the key after this call start a new operation.
+	 *
+	 * @param flight
+	 *        The flight obtained as leader from {@link #join(Object)}
+	 * @param outcome
+	 *        The outcome of the operation or <code>null</code> if the followers should
+	 *        perform the operation themselves
+	 */
+	public void land(Flight<V> flight, V outcome) {
+		if(!flight.leader)
+			throw new IllegalArgumentException("Only the leader can land a flight");
+
+		synchronized(this) {
+			flights.remove(flight.key);
+		}
+		flight.landing.setOutcome(outcome);
+		flight.landing.landed.countDown();
+	}
+}
@@ -0,0 +1,23 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.tasks.BuildStep;
+
+/**
+ * Marks the build steps that call the Stack Hammer Service and record {@link PhaseTimings}
+ * with their results. Projects with such a step get a {@link TimingTrendAction}.
+ */
+public interface StackOpBuildStep extends BuildStep {
+}
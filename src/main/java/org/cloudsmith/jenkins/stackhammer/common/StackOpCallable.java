@@ -0,0 +1,200 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.IOException;
+
+import org.cloudsmith.jenkins.stackhammer.common.ClientRegistry.Client;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Admission;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Gate;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Kind;
+import org.cloudsmith.stackhammer.api.model.Provider;
+import org.cloudsmith.stackhammer.api.model.Repository;
+import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
+
+/**
+ * Base class for the calls to the Stack Hammer Service that a build step performs. The
+ * calls are packaged as a remoting {@link Callable} so that they can be executed on the
+ * node of the build. The {@link ClientRegistry} and the {@link CloneCache} of the JVM
+ * where the callable executes are used.
+ *
+ * @param <V>
+ *        The type of the outcome that is returned to the caller
+ */
+public abstract class StackOpCallable<V> implements Callable<V, IOException> {
+	private static final long serialVersionUID = -2000707546187436152L;
+
+	/**
+	 * Executes <code>callable</code> on the node of the build if <code>onAgent</code> is
+	 * <code>true</code> and in the current JVM otherwise. The calls to the service are
+	 * throttled by <code>throttle</code>, which always lives in the current JVM.
+	 *
+	 * @param launcher
+	 *        The launcher of the build
+	 * @param onAgent
+	 *        <code>true</code> to execute on the node of the build
+	 * @param throttle
+	 *        The throttle of the service
+	 * @param callable
+	 *        The callable to execute
+	 * @return The outcome of the callable
+	 * @throws IOException
+	 *         if the callable failed or the node could not be reached
+	 * @throws InterruptedException
+	 *         if the build was aborted while waiting for a remote call
+	 */
+	public static <V> V execute(Launcher launcher, boolean onAgent, ServiceThrottle throttle,
+			StackOpCallable<V> callable) throws IOException, InterruptedException {
+		VirtualChannel channel = onAgent
+				? launcher.getChannel()
+				: null;
+		ServiceThrottle.Session session = throttle.openSession();
+		try {
+			if(channel == null) {
+				callable.gate = session;
+				return callable.call();
+			}
+			callable.gate = channel.export(Gate.class, session);
+			return channel.call(callable);
+		}
+		finally {
+			// Returns the permits that an aborted or lost execution didn't return
+			session.close();
+		}
+	}
+
+	private final String serviceURL;
+
+	private final String apiKey;
+
+	private final String owner;
+
+	private final String name;
+
+	private final String branch;
+
+	private final long cloneCacheTTL;
+
+	private final HttpTransport transport;
+
+	/**
+	 * The gate of the {@link ServiceThrottle}, assigned when the callable is executed. It
+	 * is a proxy for the gate on the master when the callable executes on an agent.
+	 */
+	private Gate gate;
+
+	/**
+	 * The listener of the build. It forwards the output to the build log when the
+	 * callable executes on an agent.
+	 */
+	protected final TaskListener listener;
+
+	protected StackOpCallable(String serviceURL, String apiKey, HttpTransport transport, String stack, String branch,
+			long cloneCacheTTL, TaskListener listener) {
+		this.serviceURL = serviceURL;
+		this.apiKey = apiKey;
+		this.transport = transport;
+		String[] splitName = stack.split("/");
+		this.owner = splitName[0];
+		this.name = splitName[1];
+		this.branch = branch;
+		this.cloneCacheTTL = cloneCacheTTL;
+		this.listener = listener;
+	}
+
+	/**
+	 * Verifies that a local clone of the repository exists at the service and records the
+	 * time it took in <code>timings</code>. Errors are reported to the listener. A clone
+	 * that isn't cached is throttled.
+	 *
+	 * @throws InterruptedException
+	 *         if the call was interrupted while waiting in the throttle
+	 */
+	protected ResultWithDiagnostic<Repository> cloneRepository(Client client, PhaseTimings timings)
+			throws IOException, InterruptedException {
+		listener.getLogger().format(
+			"Verifying that a local clone of repository %s/%s[%s] exists at Stack Hammer Service%n", owner, name,
+			branch);
+		// Only a miss takes a permit, the hit is decided by the same lookup that returns the result
+		ResultWithDiagnostic<Repository> cloneResult = cloneCacheTTL > 0
+				? CloneCache.get(serviceURL, apiKey, owner, name, branch)
+				: null;
+		if(cloneResult != null) {
+			listener.getLogger().format("Using the clone verified by an earlier build%n");
+			timings.setCloneTime(0);
+			return cloneResult;
+		}
+
+		enter(Kind.CLONE, timings);
+		try {
+			long phaseStart = System.currentTimeMillis();
+			cloneResult = client.getRepositoryService().cloneRepository(Provider.GITHUB, owner, name, branch);
+			timings.setCloneTime(System.currentTimeMillis() - phaseStart);
+			CloneCache.put(serviceURL, apiKey, owner, name, branch, cloneResult, cloneCacheTTL);
+			return cloneResult;
+		}
+		finally {
+			leave(Kind.CLONE);
+		}
+	}
+
+	/**
+	 * Waits for a permit to make a call of the given kind and records the wait in
+	 * <code>timings</code> and in the build log. Each successful call must be
+	 * followed by a call to {@link #leave(Kind)}.
+	 *
+	 * @throws InterruptedException
+	 *         if the call was interrupted while waiting
+	 */
+	protected void enter(Kind kind, PhaseTimings timings) throws IOException, InterruptedException {
+		if(gate == null)
+			return;
+
+		Admission admission = gate.enter(kind);
+		if(admission.isQueued()) {
+			timings.addThrottleWait(admission.getWaitTime(), admission.getQueueDepth());
+			listener.getLogger().format(
+				"Waited %.1f seconds for one of the %d %s slots at Stack Hammer Service, %d calls were queued ahead%n",
+				admission.getWaitTime() / 1000.0, admission.getLimit(), kind.getLabel(), admission.getQueueDepth());
+		}
+	}
+
+	/**
+	 * Returns a permit obtained from {@link #enter(Kind, PhaseTimings)}.
+	 */
+	protected void leave(Kind kind) throws IOException {
+		if(gate != null)
+			gate.leave(kind);
+	}
+
+	protected Client getClient() {
+		Client client = ClientRegistry.getClient(serviceURL, apiKey, transport);
+		if(transport != null && client.getTransport() == null)
+			listener.getLogger().format(
+				"The configured HTTP transport could not be installed. The Stack Hammer API uses its own%n");
+		return client;
+	}
+
+	/**
+	 * Removes the clone from the cache. Called when an operation that used the clone failed.
+	 */
+	protected void invalidateClone() {
+		CloneCache.invalidate(serviceURL, apiKey, owner, name, branch);
+	}
+}
@@ -26,6 +26,14 @@ import javax.servlet.ServletException;
 import org.kohsuke.stapler.QueryParameter;
 
 public abstract class StackOpDescriptor<T extends BuildStep & Describable<T>> extends BuildStepDescriptor<T> {
+	/**
+	 * Returns <code>true</code> if <code>value</code> is a stack in the form &lt;owner&gt;/&lt;name&gt;.
+	 */
+	protected static boolean isStack(String value) {
+		String[] split = value.trim().split("/");
+		return split.length == 2 && !(split[0].trim().isEmpty() || split[1].trim().isEmpty());
+	}
+
 	public StackOpDescriptor(Class<? extends T> builderClass) {
 		super(builderClass);
 	}
@@ -41,14 +49,8 @@ public abstract class StackOpDescriptor<T extends BuildStep & Describable<T>> ex
 	public FormValidation doCheckStack(@QueryParameter String value) throws IOException, ServletException {
 		if(value.length() == 0)
 			return FormValidation.error("Please specify a stack");
-		String[] split = value.trim().split("/");
-		if(split.length == 2) {
-			String owner = split[0].trim();
-			String name = split[1].trim();
-			if(!(owner.isEmpty() || name.isEmpty())) {
-				return FormValidation.ok();
-			}
-		}
+		if(isStack(value))
+			return FormValidation.ok();
 		return FormValidation.error("Stack must be in the form <owner>/<name>");
 	}
 
@@ -25,7 +25,10 @@ import org.cloudsmith.stackhammer.api.model.Diagnostic;
 import org.cloudsmith.stackhammer.api.model.MessageWithSeverity;
 import org.cloudsmith.stackhammer.api.model.Repository;
 import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
+@ExportedBean(defaultVisibility = 999)
 public abstract class StackOpResult<T> implements Action, Serializable, Cloneable {
 	private static final long serialVersionUID = 264848698476660935L;
 
@@ -33,6 +36,12 @@ public abstract class StackOpResult<T> implements Action, Serializable, Cloneabl
 
 	private ResultWithDiagnostic<T> resultDiagnostic;
 
+	private Integer resultErrorCount;
+
+	private Integer resultWarningCount;
+
+	private PhaseTimings timings;
+
 	public Api getApi() {
 		return new Api(this);
 	}
@@ -57,12 +66,50 @@ public abstract class StackOpResult<T> implements Action, Serializable, Cloneabl
 				: cloneDiagnostic.getResult();
 	}
 
+	/**
+	 * Returns the time spent in each phase of the operation. Results that were stored
+	 * before timings were recorded get an instance where no phase has been performed.
+	 */
+	@Exported
+	public synchronized PhaseTimings getTimings() {
+		if(timings == null)
+			timings = new PhaseTimings();
+		return timings;
+	}
+
+	/**
+	 * Replaces the recorded timings. Used when the operation was performed by a
+	 * {@link StackOpCallable} that measured the timings.
+	 */
+	public synchronized void setTimings(PhaseTimings timings) {
+		this.timings = timings;
+	}
+
+	/**
+	 * Discards the recorded timings. Used when a result is copied to a build that
+	 * didn't perform the operation.
+	 */
+	protected synchronized void resetTimings() {
+		timings = null;
+	}
+
 	public T getResult() {
 		return resultDiagnostic == null
 				? null
 				: resultDiagnostic.getResult();
 	}
 
+	/**
+	 * Returns the name of the stack in the form &lt;owner&gt;/&lt;name&gt; or <code>null</code>
+	 * if the repository is not known.
+	 */
+	public String getStack() {
+		Repository repo = getRepository();
+		return repo == null
+				? null
+				: repo.getOwner() + '/' + repo.getName();
+	}
+
 	public List<Diagnostic> getResultDiagnostics() {
 		return resultDiagnostic == null
 				? Collections.<Diagnostic> emptyList()
@@ -73,20 +120,18 @@ public abstract class StackOpResult<T> implements Action, Serializable, Cloneabl
 		return getResultDiagnostics().size();
 	}
 
-	protected String getSummary(List<? extends MessageWithSeverity> messages) {
-		int errorCount = 0;
-		int warningCount = 0;
-		for(MessageWithSeverity msg : messages) {
-			switch(msg.getSeverity()) {
-				case MessageWithSeverity.WARNING:
-					warningCount++;
-					break;
-				case MessageWithSeverity.ERROR:
-				case MessageWithSeverity.FATAL:
-					errorCount++;
-			}
-		}
+	/**
+	 * Returns a human readable count of the errors and warnings among <code>messages</code>.
+	 */
+	public static String getSummary(List<? extends MessageWithSeverity> messages) {
+		int[] counts = countSeverities(messages);
+		return getSummary(counts[0], counts[1]);
+	}
 
+	/**
+	 * Returns a human readable form of the given error and warning counts.
+	 */
+	public static String getSummary(int errorCount, int warningCount) {
 		if(errorCount == 0) {
 			if(warningCount == 0)
 				return "No errors or warnings";
@@ -106,10 +151,82 @@ public abstract class StackOpResult<T> implements Action, Serializable, Cloneabl
 				: " warning");
 	}
 
+	/**
+	 * Returns the number of errors and the number of warnings among <code>messages</code>.
+	 */
+	private static int[] countSeverities(List<? extends MessageWithSeverity> messages) {
+		int errorCount = 0;
+		int warningCount = 0;
+		for(MessageWithSeverity msg : messages) {
+			switch(msg.getSeverity()) {
+				case MessageWithSeverity.WARNING:
+					warningCount++;
+					break;
+				case MessageWithSeverity.ERROR:
+				case MessageWithSeverity.FATAL:
+					errorCount++;
+			}
+		}
+		return new int[] { errorCount, warningCount };
+	}
+
+	/**
+	 * Returns the number of errors and fatal errors among the result diagnostics.
+	 */
+	public int getResultErrorCount() {
+		initCounts();
+		return resultErrorCount.intValue();
+	}
+
+	/**
+	 * Returns the number of warnings among the result diagnostics.
+	 */
+	public int getResultWarningCount() {
+		initCounts();
+		return resultWarningCount.intValue();
+	}
+
+	/**
+	 * Returns a human readable count of the errors and warnings among the result diagnostics.
+	 */
+	protected String getResultSummary() {
+		initCounts();
+		return getSummary(resultErrorCount.intValue(), resultWarningCount.intValue());
+	}
+
+	/**
+	 * The counts are computed when the result is set. Results that were stored before the
+	 * counts were introduced get them computed once, the first time they are needed.
+	 */
+	private synchronized void initCounts() {
+		if(resultErrorCount == null || resultWarningCount == null)
+			updateCounts();
+	}
+
+	private synchronized void updateCounts() {
+		int[] counts = countSeverities(getResultDiagnostics());
+		resultErrorCount = Integer.valueOf(counts[0]);
+		resultWarningCount = Integer.valueOf(counts[1]);
+	}
+
+	/**
+	 * Returns <code>true</code> if the operation has not produced a result or if the
+	 * clone or the operation ended with an error.
+	 */
+	public boolean isFailed() {
+		return cloneDiagnostic == null || cloneDiagnostic.getSeverity() == Diagnostic.ERROR ||
+				resultDiagnostic == null || resultDiagnostic.getSeverity() == Diagnostic.ERROR;
+	}
+
 	protected String getUrlFor(String item) {
 		return getUrlName() + '/' + item;
 	}
 
+	/**
+	 * Returns the outcome of the operation as recorded in the {@link BuildSummary} of the build.
+	 */
+	public abstract BuildSummary.Operation summarize();
+
 	/**
 	 * @param cloneDiagnostic the cloneDiagnostic to set
 	 */
@@ -119,5 +236,6 @@ public abstract class StackOpResult<T> implements Action, Serializable, Cloneabl
 
 	public void setResult(ResultWithDiagnostic<T> resultDiagnostic) {
 		this.resultDiagnostic = resultDiagnostic;
+		updateCounts();
 	}
 }
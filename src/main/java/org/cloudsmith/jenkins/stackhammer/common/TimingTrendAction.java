@@ -0,0 +1,322 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import hudson.util.ShiftedCategoryAxis;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.cloudsmith.jenkins.stackhammer.common.BuildSummary.Operation;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.category.CategoryDataset;
+
+/**
+ * Project action that shows trend graphs of the time spent in each phase of the
+ * Stack Hammer operations of recent builds and of the errors and warnings that
+ * they reported. The graphs are shown on the project page and are available at
+ * <project>/stackhammerTimings/graph/png and <project>/stackhammerTimings/countGraph/png
+ * <p>
+ * The graphs are built from the {@link BuildSummary} files in the build directories
+ * alone. Neither the builds nor their results are loaded. The summaries are read once
+ * and then kept until the {@link BuildSummaryWriter} reports a change.
+ * </p>
+ */
+public class TimingTrendAction implements Action {
+	/**
+	 * Category label that shows the build number.
+	 */
+	private static class BuildLabel implements Comparable<BuildLabel> {
+		private final int number;
+
+		BuildLabel(int number) {
+			this.number = number;
+		}
+
+		public int compareTo(BuildLabel o) {
+			return number < o.number
+					? -1
+					: number == o.number
+							? 0
+							: 1;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof BuildLabel && ((BuildLabel) o).number == number;
+		}
+
+		@Override
+		public int hashCode() {
+			return number;
+		}
+
+		@Override
+		public String toString() {
+			return "#" + number;
+		}
+	}
+
+	/**
+	 * The maximum number of builds shown in the graphs.
+	 */
+	public static final int MAX_BUILDS = 50;
+
+	private static final String CLONE = "Clone";
+
+	private static final String VALIDATE = "Validate";
+
+	private static final String QUEUE = "Queue";
+
+	private static final String THROTTLE = "Throttle";
+
+	private static final String DEPLOY = "Deploy";
+
+	private static final String ERRORS = "Errors";
+
+	private static final String WARNINGS = "Warnings";
+
+	private static void addSeconds(DataSetBuilder<String, BuildLabel> dsb, long millis, String phase,
+			BuildLabel label) {
+		dsb.add(millis < 0
+				? 0.0
+				: millis / 1000.0, phase, label);
+	}
+
+	private static JFreeChart createChart(JFreeChart chart) {
+		chart.setBackgroundPaint(Color.white);
+
+		CategoryPlot plot = chart.getCategoryPlot();
+		plot.setBackgroundPaint(Color.WHITE);
+		plot.setOutlinePaint(null);
+		plot.setRangeGridlinesVisible(true);
+		plot.setRangeGridlinePaint(Color.black);
+
+		CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+		plot.setDomainAxis(domainAxis);
+		domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+		domainAxis.setLowerMargin(0.0);
+		domainAxis.setUpperMargin(0.0);
+		domainAxis.setCategoryMargin(0.0);
+		return chart;
+	}
+
+	private static int parseBuildNumber(String name) {
+		if(name.length() == 0 || name.length() > 9)
+			return -1;
+		for(int idx = 0; idx < name.length(); ++idx)
+			if(!Character.isDigit(name.charAt(idx)))
+				return -1;
+		return Integer.parseInt(name);
+	}
+
+	private final AbstractProject<?, ?> project;
+
+	/**
+	 * The summaries read so far, keyed by the name of the build directory. A summary
+	 * never changes once it has been written.
+	 */
+	private Map<String, BuildSummary> summaryCache = new HashMap<String, BuildSummary>();
+
+	/**
+	 * The result of {@link #getSummaries()}, or <code>null</code> when the build
+	 * directories must be read again.
+	 */
+	private List<BuildSummary> summaries;
+
+	public TimingTrendAction(AbstractProject<?, ?> project) {
+		this.project = project;
+	}
+
+	private CategoryDataset buildCountDataSet() {
+		DataSetBuilder<String, BuildLabel> dsb = new DataSetBuilder<String, BuildLabel>();
+		for(BuildSummary summary : getSummaries()) {
+			int errors = 0;
+			int warnings = 0;
+			for(Operation operation : summary.getOperations()) {
+				errors += operation.getErrorCount();
+				warnings += operation.getWarningCount();
+			}
+			BuildLabel label = new BuildLabel(summary.getNumber());
+			dsb.add(Integer.valueOf(errors), ERRORS, label);
+			dsb.add(Integer.valueOf(warnings), WARNINGS, label);
+		}
+		return dsb.build();
+	}
+
+	private CategoryDataset buildTimingDataSet() {
+		DataSetBuilder<String, BuildLabel> dsb = new DataSetBuilder<String, BuildLabel>();
+		for(BuildSummary summary : getSummaries()) {
+			long clone = 0;
+			long validate = 0;
+			long queue = 0;
+			long deploy = 0;
+			long throttle = 0;
+			for(Operation operation : summary.getOperations()) {
+				PhaseTimings timings = operation.getTimings();
+				clone += Math.max(timings.getCloneTime(), 0);
+				validate += Math.max(timings.getValidateTime(), 0);
+				queue += Math.max(timings.getQueueTime(), 0);
+				if(timings.getPollTime() > 0)
+					deploy += timings.getPollTime() - Math.max(timings.getQueueTime(), 0);
+				throttle += timings.getThrottleTime();
+			}
+			BuildLabel label = new BuildLabel(summary.getNumber());
+			addSeconds(dsb, clone, CLONE, label);
+			addSeconds(dsb, validate, VALIDATE, label);
+			addSeconds(dsb, queue, QUEUE, label);
+			addSeconds(dsb, deploy, DEPLOY, label);
+			addSeconds(dsb, throttle, THROTTLE, label);
+		}
+		return dsb.build();
+	}
+
+	/**
+	 * Returns the trend graph of the errors and warnings. Called by the Stapler dispatcher
+	 * for the path <project>/stackhammerTimings/countGraph/png
+	 */
+	public Graph getCountGraph() {
+		return new Graph(getLastModified(), 500, 200) {
+			@Override
+			protected JFreeChart createGraph() {
+				return createChart(ChartFactory.createLineChart(
+					null, null, "count", buildCountDataSet(), PlotOrientation.VERTICAL, true, true, false));
+			}
+		};
+	}
+
+	public String getDisplayName() {
+		return "Stack Hammer Trend";
+	}
+
+	/**
+	 * Returns the trend graph of the phase timings. Called by the Stapler dispatcher for the path
+	 * <project>/stackhammerTimings/graph/png
+	 */
+	public Graph getGraph() {
+		return new Graph(getLastModified(), 500, 200) {
+			@Override
+			protected JFreeChart createGraph() {
+				return createChart(ChartFactory.createStackedAreaChart(
+					null, null, "seconds", buildTimingDataSet(), PlotOrientation.VERTICAL, true, true, false));
+			}
+		};
+	}
+
+	/**
+	 * The action has no link in the side panel. The graphs are shown in the floating box.
+	 */
+	public String getIconFileName() {
+		return null;
+	}
+
+	private long getLastModified() {
+		List<BuildSummary> summaries = getSummaries();
+		if(summaries.isEmpty())
+			return 0;
+		BuildSummary last = summaries.get(summaries.size() - 1);
+		return last.getTimestamp() + last.getDuration();
+	}
+
+	/**
+	 * Returns the summaries of the most recent builds that have one, oldest first.
+	 */
+	private synchronized List<BuildSummary> getSummaries() {
+		if(summaries == null)
+			summaries = readSummaries();
+		return summaries;
+	}
+
+	/**
+	 * Makes the next request read the summaries again. Called when a build
+	 * has completed or has been deleted.
+	 */
+	synchronized void invalidate() {
+		summaries = null;
+	}
+
+	/**
+	 * Reads the summaries of the most recent builds that have one, oldest first. Build
+	 * directories are named by build number or, in older layouts, have a numbered link to
+	 * them. Only the numbered names are used when present so that the search can stop
+	 * when enough summaries have been found.
+	 */
+	private List<BuildSummary> readSummaries() {
+		File buildDir = project.getBuildDir();
+		String[] names = buildDir.list();
+		if(names == null)
+			return Collections.emptyList();
+
+		TreeMap<Integer, String> numbered = new TreeMap<Integer, String>(Collections.reverseOrder());
+		for(String name : names) {
+			int number = parseBuildNumber(name);
+			if(number >= 0)
+				numbered.put(Integer.valueOf(number), name);
+		}
+		Iterable<String> candidates = numbered.isEmpty()
+				? Arrays.asList(names)
+				: numbered.values();
+
+		TreeMap<Integer, BuildSummary> found = new TreeMap<Integer, BuildSummary>(Collections.reverseOrder());
+		Map<String, BuildSummary> cache = new HashMap<String, BuildSummary>();
+		for(String name : candidates) {
+			BuildSummary summary = summaryCache.get(name);
+			if(summary == null)
+				summary = BuildSummary.load(new File(buildDir, name));
+			if(summary == null)
+				continue;
+			cache.put(name, summary);
+			found.put(Integer.valueOf(summary.getNumber()), summary);
+			if(!numbered.isEmpty() && found.size() == MAX_BUILDS)
+				break;
+		}
+		summaryCache = cache;
+
+		List<BuildSummary> result = new ArrayList<BuildSummary>(Math.min(found.size(), MAX_BUILDS));
+		for(BuildSummary summary : found.values()) {
+			result.add(summary);
+			if(result.size() == MAX_BUILDS)
+				break;
+		}
+		Collections.reverse(result);
+		return Collections.unmodifiableList(result);
+	}
+
+	public String getUrlName() {
+		return "stackhammerTimings";
+	}
+
+	/**
+	 * Returns <code>true</code> if any of the recent builds has a Stack Hammer summary.
+	 */
+	public boolean isGraphAvailable() {
+		return !getSummaries().isEmpty();
+	}
+}
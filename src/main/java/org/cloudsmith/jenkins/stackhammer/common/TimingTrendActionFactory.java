@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Project;
+import hudson.model.TransientProjectActionFactory;
+import hudson.tasks.Builder;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Adds a {@link TimingTrendAction} to projects that have a {@link StackOpBuildStep}. A
+ * factory is used so that a project that both validates and deploys gets one action.
+ */
+@Extension
+public class TimingTrendActionFactory extends TransientProjectActionFactory {
+	@Override
+	public Collection<? extends Action> createFor(@SuppressWarnings("rawtypes") AbstractProject target) {
+		if(target instanceof Project) {
+			for(Builder builder : ((Project<?, ?>) target).getBuilders())
+				if(builder instanceof StackOpBuildStep)
+					return Collections.singleton(new TimingTrendAction(target));
+		}
+		return Collections.emptyList();
+	}
+}
@@ -15,37 +15,163 @@ package org.cloudsmith.jenkins.stackhammer.deployment;
 
 import hudson.Launcher;
 import hudson.model.BuildListener;
+import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
+import hudson.remoting.VirtualChannel;
 import hudson.tasks.Builder;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URI;
 import java.util.List;
 
 import jenkins.model.Jenkins;
 
+import org.cloudsmith.jenkins.stackhammer.common.StackOpBuildStep;
+import org.cloudsmith.jenkins.stackhammer.common.StackOpCallable;
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentCallable.Outcome;
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentResult.Cancellation;
+import org.cloudsmith.jenkins.stackhammer.deployment.PollEngine.JobListener;
 import org.cloudsmith.jenkins.stackhammer.validation.ValidationDescriptor;
+import org.cloudsmith.jenkins.stackhammer.validation.ValidationResult;
 import org.cloudsmith.jenkins.stackhammer.validation.Validator;
-import org.cloudsmith.stackhammer.api.StackHammerModule;
-import org.cloudsmith.stackhammer.api.model.CatalogGraph;
-import org.cloudsmith.stackhammer.api.model.Diagnostic;
 import org.cloudsmith.stackhammer.api.model.LogEntry;
-import org.cloudsmith.stackhammer.api.model.PollResult;
-import org.cloudsmith.stackhammer.api.model.Provider;
-import org.cloudsmith.stackhammer.api.model.Repository;
-import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
-import org.cloudsmith.stackhammer.api.service.RepositoryService;
-import org.cloudsmith.stackhammer.api.service.StackHammerFactory;
-import org.cloudsmith.stackhammer.api.service.StackService;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-
 /**
  * A {@link Builder} that performs Stack Hammer Validation
  */
-public class Deployer extends Builder {
+public class Deployer extends Builder implements StackOpBuildStep {
+	/**
+	 * Receives the log entries of the deployment job on the master, writes them to the
+	 * build log and records them in the result.
+	 */
+	private static class LogSink implements JobListener {
+		private final DeploymentResult data;
+
+		private final PrintStream logger;
+
+		LogSink(DeploymentResult data, PrintStream logger) {
+			this.data = data;
+			this.logger = logger;
+		}
+
+		public void logEntriesReceived(List<LogEntry> logEntries) throws IOException {
+			for(LogEntry logEntry : logEntries)
+				logger.println(logEntry);
+			data.addLogEntries(logEntries);
+		}
+	}
+
+	/**
+	 * Deploys a stack, optionally after validating it, and records the outcome in a
+	 * {@link DeploymentResult} that is added to the build. The calls to the service
+	 * are made by a {@link DeploymentCallable} that executes on the node of the build
+	 * when so configured.
+	 *
+	 * @return <code>true</code> if the stack was deployed without errors
+	 * @throws InterruptedException
+	 *         if the build was aborted
+	 */
+	static boolean deploy(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, String stack,
+			String branch, String apiKey, Boolean dryRunObj, boolean validate) throws InterruptedException {
+		try {
+			logParameters(listener.getLogger());
+		}
+		catch(Exception e) {
+			e.printStackTrace(listener.error("Exception during deployment of %s", stack));
+			return false;
+		}
+
+		DeploymentResult data = new DeploymentResult(build, stack);
+		if(validate)
+			data.setValidation(new ValidationResult(build, stack));
+		build.addAction(data);
+
+		boolean dryRun = dryRunObj == null
+				? false
+				: dryRunObj.booleanValue();
+		return deploy(data, launcher, listener, stack, branch, apiKey, dryRun, validate);
+	}
+
+	/**
+	 * Deploys a stack, optionally after validating it, and records the outcome in <code>data</code>.
+	 * The caller is responsible for attaching <code>data</code> to the build.
+	 *
+	 * @return <code>true</code> if the stack was deployed without errors
+	 * @throws InterruptedException
+	 *         if the build was aborted
+	 */
+	static boolean deploy(DeploymentResult data, Launcher launcher, TaskListener listener, String stack,
+			String branch, String apiKey, boolean dryRun, boolean validate) throws InterruptedException {
+		try {
+			PrintStream logger = listener.getLogger();
+			ValidationDescriptor validationDesc = getValidationDescriptor();
+			String serverURL = validationDesc.getServiceURL();
+
+			Integer pollIntervalObj = validationDesc.getPollInterval();
+			long pollInterval = pollIntervalObj == null
+					? 0
+					: pollIntervalObj.longValue();
+
+			if(pollInterval < 1)
+				pollInterval = 1;
+
+			long maxTime = 0;
+			Integer maxTimeObj = validationDesc.getMaxTime();
+			if(maxTimeObj != null && maxTimeObj.longValue() > 0)
+				maxTime = maxTimeObj.longValue() * 1000;
+
+			boolean onAgent = validationDesc.isRunOnAgents();
+			JobListener logSink = new LogSink(data, logger);
+			VirtualChannel channel = launcher.getChannel();
+			if(onAgent && channel != null)
+				logSink = RemoteJobListener.export(channel, logSink);
+
+			DeploymentCallable callable = new DeploymentCallable(
+				serverURL, apiKey, validationDesc.getHttpTransport(), stack, branch,
+				validationDesc.getCloneCacheTTLMillis(), listener, validate, dryRun, pollInterval * 1000, maxTime,
+				validationDesc.getPollStrategy(), logSink);
+
+			Outcome outcome;
+			try {
+				outcome = StackOpCallable.execute(launcher, onAgent, validationDesc.getThrottle(), callable);
+			}
+			catch(InterruptedException e) {
+				// The build was aborted while waiting for the node. The outcome is lost.
+				data.setCancellation(Cancellation.ABORTED);
+				throw e;
+			}
+			outcome.applyTo(data);
+			if(outcome.getCancellation() == Cancellation.ABORTED)
+				throw new InterruptedException();
+			return !data.isFailed();
+		}
+		catch(InterruptedException e) {
+			listener.error("%s of %s was aborted", validate
+					? "Validation and deployment"
+					: "Deployment", stack);
+			throw e;
+		}
+		catch(Exception e) {
+			e.printStackTrace(listener.error("Exception during deployment of %s", stack));
+			return false;
+		}
+	}
+
+	static ValidationDescriptor getValidationDescriptor() {
+		return (ValidationDescriptor) Jenkins.getInstance().getDescriptorOrDie(Validator.class);
+	}
+
+	/**
+	 * Writes the address of the Stack Hammer Service to the build log.
+	 */
+	static void logParameters(PrintStream logger) {
+		URI uri = URI.create(getValidationDescriptor().getServiceURL());
+		logger.format(
+			"Using parameters%n scheme=%s%n host=%s%n port=%s%n prefix=%s%n", uri.getScheme(), uri.getHost(),
+			uri.getPort(), uri.getPath());
+	}
 
 	private final Boolean dryRun;
 
@@ -63,12 +189,6 @@ public class Deployer extends Builder {
 		this.apiKey = apiKey;
 	}
 
-	private void emitLogEntries(List<LogEntry> logEntries, DeploymentResult data, PrintStream logger) {
-		for(LogEntry logEntry : logEntries)
-			logger.println(logEntry);
-		data.addLogEntries(logEntries);
-	}
-
 	public String getApiKey() {
 		return apiKey;
 	}
@@ -91,115 +211,8 @@ public class Deployer extends Builder {
 	}
 
 	@Override
-	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
-		try {
-			PrintStream logger = listener.getLogger();
-
-			ValidationDescriptor validationDesc = (ValidationDescriptor) Jenkins.getInstance().getDescriptorOrDie(
-				Validator.class);
-
-			String serverURL = validationDesc.getServiceURL();
-			URI uri = URI.create(serverURL);
-			logger.format(
-				"Using parameters%n scheme=%s%n host=%s%n port=%s%n prefix=%s%n", uri.getScheme(), uri.getHost(),
-				uri.getPort(), uri.getPath());
-
-			Injector injector = Guice.createInjector(new StackHammerModule(
-				uri.getScheme(), uri.getHost(), uri.getPort(), uri.getPath(), getApiKey()));
-
-			DeploymentResult data = new DeploymentResult();
-			build.addAction(data);
-
-			StackHammerFactory factory = injector.getInstance(StackHammerFactory.class);
-			RepositoryService repoService = factory.createRepositoryService();
-			String[] splitName = getStack().split("/");
-			String owner = splitName[0];
-			String name = splitName[1];
-			logger.format(
-				"Verifying that a local clone of repository %s/%s[%s] exists at Stack Hammer Service%n", owner, name,
-				branch);
-			ResultWithDiagnostic<Repository> cloneResult = repoService.cloneRepository(
-				Provider.GITHUB, owner, name, branch);
-
-			data.setCloneDiagnostic(cloneResult);
-
-			if(cloneResult.getSeverity() == Diagnostic.ERROR) {
-				listener.error(cloneResult.toString());
-				return false;
-			}
-			cloneResult.log(logger);
-
-			StackService stackService = factory.createStackService();
-			Repository repo = cloneResult.getResult();
-
-			Integer pollIntervalObj = validationDesc.getPollInterval();
-			long pollInterval = pollIntervalObj == null
-					? 0
-					: pollIntervalObj.longValue();
-
-			if(pollInterval < 1)
-				pollInterval = 1;
-
-			long startTime = System.currentTimeMillis();
-			long lastPollTime = startTime;
-			long failTime = Long.MAX_VALUE;
-			Integer maxTimeObj = validationDesc.getMaxTime();
-			if(maxTimeObj != null && maxTimeObj.longValue() > 0)
-				failTime = startTime + maxTimeObj.longValue() * 1000;
-
-			Boolean dryRunObj = getDryRun();
-			boolean dryRun = dryRunObj == null
-					? false
-					: dryRunObj.booleanValue();
-
-			String jobIdentifier = stackService.deployStack(repo, repo.getOwner() + "/" + repo.getName(), dryRun);
-
-			logger.format("Sending order to deploy %s/%s to Stack Hammer Service%n", owner, name);
-			for(;;) {
-				long now = System.currentTimeMillis();
-				if(now > failTime) {
-					logger.format("Job didn't finish in time.%n");
-					return false;
-				}
-
-				long sleepTime = (lastPollTime + pollInterval * 1000) - now;
-				if(sleepTime > 0)
-					Thread.sleep(sleepTime);
-
-				lastPollTime = System.currentTimeMillis();
-				PollResult pollResult = stackService.pollJob(jobIdentifier);
-				switch(pollResult.getJobState()) {
-					case SCHEDULED:
-					case STARTING:
-						continue;
-					case SLEEPING:
-					case RUNNING:
-						emitLogEntries(pollResult.getLogEntries(), data, logger);
-						continue;
-					case CANCELLED:
-						listener.error("Job was cancelled");
-						return false;
-					default:
-						emitLogEntries(pollResult.getLogEntries(), data, logger);
-						break;
-				}
-				break;
-			}
-
-			ResultWithDiagnostic<List<CatalogGraph>> deploymentResult = stackService.getDeploymentResult(jobIdentifier);
-
-			data.setResult(deploymentResult);
-
-			if(deploymentResult.getSeverity() == Diagnostic.ERROR) {
-				listener.error(deploymentResult.toString());
-				return false;
-			}
-			deploymentResult.log(logger);
-		}
-		catch(Exception e) {
-			e.printStackTrace(listener.error("Exception during deployment of %s", getStack()));
-			return false;
-		}
-		return true;
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+			throws InterruptedException {
+		return deploy(build, launcher, listener, getStack(), getBranch(), getApiKey(), getDryRun(), false);
 	}
 }
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.cloudsmith.jenkins.stackhammer.common.ClientRegistry.Client;
+import org.cloudsmith.jenkins.stackhammer.common.HttpTransport;
+import org.cloudsmith.jenkins.stackhammer.common.ModelTransfer;
+import org.cloudsmith.jenkins.stackhammer.common.PhaseTimings;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Kind;
+import org.cloudsmith.jenkins.stackhammer.common.StackOpCallable;
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentResult.Cancellation;
+import org.cloudsmith.jenkins.stackhammer.deployment.PollEngine.JobListener;
+import org.cloudsmith.jenkins.stackhammer.deployment.PollEngine.JobTracker;
+import org.cloudsmith.jenkins.stackhammer.validation.ValidationResult;
+import org.cloudsmith.stackhammer.api.model.CatalogGraph;
+import org.cloudsmith.stackhammer.api.model.Diagnostic;
+import org.cloudsmith.stackhammer.api.model.PollResult;
+import org.cloudsmith.stackhammer.api.model.Repository;
+import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
+import org.cloudsmith.stackhammer.api.service.StackService;
+
+/**
+ * Clones a stack, optionally validates it, orders the deployment and polls the job
+ * until it completes. The log entries are passed to a {@link JobListener} as they
+ * arrive. When the callable executes on an agent, the listener is a proxy for a
+ * listener on the master so only the log entries and the final outcome are sent
+ * back.
+ * <p>
+ * The Stack Hammer Service has no operation to cancel a job, so when the build is
+ * aborted or the time runs out the polling stops and the cancellation is recorded,
+ * but the job itself runs to completion at the service.
+ * </p>
+ */
+public class DeploymentCallable extends StackOpCallable<DeploymentCallable.Outcome> {
+	/**
+	 * The results of the clone, the validation and the deployment. Results of operations
+	 * that were not performed are <code>null</code>.
+	 */
+	public static class Outcome implements Serializable {
+		private static final long serialVersionUID = -4405478990342390838L;
+
+		private final PhaseTimings timings = new PhaseTimings();
+
+		private transient ResultWithDiagnostic<Repository> cloneResult;
+
+		private transient ResultWithDiagnostic<String> validationResult;
+
+		private transient ResultWithDiagnostic<List<CatalogGraph>> deploymentResult;
+
+		private String jobIdentifier;
+
+		private Cancellation cancellation;
+
+		/**
+		 * Records the results in <code>data</code> and in its validation, if any.
+		 */
+		void applyTo(DeploymentResult data) {
+			timings.setBytesReceived(data.getLogDataLength());
+			data.setTimings(timings);
+			data.setJobIdentifier(jobIdentifier);
+			data.setCancellation(cancellation);
+			if(cloneResult != null)
+				data.setCloneDiagnostic(cloneResult);
+			if(deploymentResult != null)
+				data.setResult(deploymentResult);
+
+			ValidationResult validation = data.getValidation();
+			if(validation != null) {
+				PhaseTimings validationTimings = new PhaseTimings();
+				validationTimings.setCloneTime(timings.getCloneTime());
+				validationTimings.setValidateTime(timings.getValidateTime());
+				validation.setTimings(validationTimings);
+				if(cloneResult != null)
+					validation.setCloneDiagnostic(cloneResult);
+				if(validationResult != null)
+					validation.setResult(validationResult);
+			}
+		}
+
+		public Cancellation getCancellation() {
+			return cancellation;
+		}
+
+		/**
+		 * Writes the results as XML since the model classes are not known to be serializable.
+		 */
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+			ModelTransfer.writeModel(out, cloneResult);
+			ModelTransfer.writeModel(out, validationResult);
+			ModelTransfer.writeModel(out, deploymentResult);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			cloneResult = (ResultWithDiagnostic<Repository>) ModelTransfer.readModel(in);
+			validationResult = (ResultWithDiagnostic<String>) ModelTransfer.readModel(in);
+			deploymentResult = (ResultWithDiagnostic<List<CatalogGraph>>) ModelTransfer.readModel(in);
+		}
+	}
+
+	private static final long serialVersionUID = 3960640961591113263L;
+
+	private final boolean validate;
+
+	private final boolean dryRun;
+
+	private final long pollInterval;
+
+	private final long maxTime;
+
+	private final PollStrategy pollStrategy;
+
+	private final JobListener logSink;
+
+	/**
+	 * @param validate
+	 *        <code>true</code> if the stack should be validated before it is deployed
+	 * @param dryRun
+	 *        <code>true</code> to deploy in dry-run mode
+	 * @param pollInterval
+	 *        The poll interval in milliseconds
+	 * @param maxTime
+	 *        The maximum number of milliseconds to poll the job or zero for no limit
+	 * @param pollStrategy
+	 *        The strategy that controls the delay between polls
+	 * @param logSink
+	 *        The listener that receives the log entries of the job
+	 */
+	public DeploymentCallable(String serviceURL, String apiKey, HttpTransport transport, String stack, String branch,
+			long cloneCacheTTL, TaskListener listener, boolean validate, boolean dryRun, long pollInterval,
+			long maxTime, PollStrategy pollStrategy, JobListener logSink) {
+		super(serviceURL, apiKey, transport, stack, branch, cloneCacheTTL, listener);
+		this.validate = validate;
+		this.dryRun = dryRun;
+		this.pollInterval = pollInterval;
+		this.maxTime = maxTime;
+		this.pollStrategy = pollStrategy;
+		this.logSink = logSink;
+	}
+
+	public Outcome call() throws IOException {
+		Outcome outcome = new Outcome();
+		PrintStream logger = listener.getLogger();
+		try {
+			Client client = getClient();
+			outcome.cloneResult = cloneRepository(client, outcome.timings);
+			if(outcome.cloneResult.getSeverity() == Diagnostic.ERROR) {
+				listener.error(outcome.cloneResult.toString());
+				return outcome;
+			}
+			outcome.cloneResult.log(logger);
+
+			StackService stackService = client.getStackService();
+			Repository repo = outcome.cloneResult.getResult();
+
+			if(validate) {
+				logger.format("Sending order to validate stack %s/%s%n", repo.getOwner(), repo.getName());
+				enter(Kind.VALIDATION, outcome.timings);
+				try {
+					long phaseStart = System.currentTimeMillis();
+					outcome.validationResult = stackService.validateStack(
+						repo, repo.getOwner() + "/" + repo.getName());
+					outcome.timings.setValidateTime(System.currentTimeMillis() - phaseStart);
+				}
+				finally {
+					leave(Kind.VALIDATION);
+				}
+
+				if(outcome.validationResult.getSeverity() == Diagnostic.ERROR) {
+					invalidateClone();
+					listener.error(outcome.validationResult.toString());
+					listener.error(
+						"Validation of %s/%s failed, the stack will not be deployed", repo.getOwner(), repo.getName());
+					return outcome;
+				}
+				outcome.validationResult.log(logger);
+			}
+
+			deploy(stackService, repo, outcome);
+			if(outcome.deploymentResult != null && outcome.deploymentResult.getSeverity() == Diagnostic.ERROR)
+				invalidateClone();
+			return outcome;
+		}
+		catch(InterruptedException e) {
+			outcome.cancellation = Cancellation.ABORTED;
+			logger.format("Aborted while waiting for Stack Hammer Service%n");
+			Thread.currentThread().interrupt();
+			return outcome;
+		}
+		catch(IOException e) {
+			invalidateClone();
+			throw e;
+		}
+		catch(RuntimeException e) {
+			invalidateClone();
+			throw e;
+		}
+	}
+
+	private void deploy(StackService stackService, Repository repo, Outcome outcome) throws IOException,
+			InterruptedException {
+		PrintStream logger = listener.getLogger();
+		PhaseTimings timings = outcome.timings;
+		long failTime = maxTime > 0
+				? System.currentTimeMillis() + maxTime
+				: Long.MAX_VALUE;
+
+		String jobIdentifier;
+		enter(Kind.DEPLOYMENT, timings);
+		try {
+			long phaseStart = System.currentTimeMillis();
+			jobIdentifier = stackService.deployStack(repo, repo.getOwner() + "/" + repo.getName(), dryRun);
+			timings.setDeployTime(System.currentTimeMillis() - phaseStart);
+		}
+		finally {
+			leave(Kind.DEPLOYMENT);
+		}
+		outcome.jobIdentifier = jobIdentifier;
+
+		logger.format("Sending order to deploy %s/%s to Stack Hammer Service%n", repo.getOwner(), repo.getName());
+		JobTracker tracker = PollEngine.getInstance().track(
+			stackService, jobIdentifier, pollStrategy.newSchedule(pollInterval), failTime, logSink);
+
+		PollResult pollResult;
+		try {
+			pollResult = tracker.waitForCompletion();
+		}
+		catch(InterruptedException e) {
+			outcome.cancellation = Cancellation.ABORTED;
+			logger.format(
+				"Stopped following job %s. It may still be running at the Stack Hammer Service%n", jobIdentifier);
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException("Unable to poll job " + jobIdentifier, cause);
+		}
+		finally {
+			// Stops the polling if we were interrupted
+			tracker.cancel();
+			timings.setQueueTime(tracker.getQueueTime());
+			timings.setPollTime(tracker.getTrackingTime());
+			timings.setPollCount(tracker.getPollCount());
+			timings.setEntriesReceived(tracker.getEntriesReceived());
+		}
+
+		int duplicates = tracker.getLogCursor().getDuplicateCount();
+		if(duplicates > 0)
+			logger.format("Ignored %d log entries that were sent more than once%n", duplicates);
+		int suspected = tracker.getLogCursor().getSuspectedDuplicateCount();
+		if(suspected > 0)
+			logger.format("Kept %d log entries that repeat the entries logged just before them%n", suspected);
+
+		if(pollResult == null) {
+			outcome.cancellation = Cancellation.TIMED_OUT;
+			logger.format("Job didn't finish in time.%n");
+			logger.format(
+				"Stopped following job %s. It may still be running at the Stack Hammer Service%n", jobIdentifier);
+			return;
+		}
+
+		switch(pollResult.getJobState()) {
+			case CANCELLED:
+				outcome.cancellation = Cancellation.CANCELLED;
+				listener.error("Job was cancelled");
+				return;
+			default:
+				break;
+		}
+
+		outcome.deploymentResult = stackService.getDeploymentResult(jobIdentifier);
+		if(outcome.deploymentResult.getSeverity() == Diagnostic.ERROR)
+			listener.error(outcome.deploymentResult.toString());
+		else
+			outcome.deploymentResult.log(logger);
+	}
+}
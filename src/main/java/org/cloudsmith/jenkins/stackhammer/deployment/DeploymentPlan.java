@@ -0,0 +1,157 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The stacks deployed by a {@link StackOrchestrator} and the dependencies between them.
+ * The plan is written with one stack per line, optionally followed by a colon and the
+ * stacks that must be deployed before it:
+ *
+ * <pre>
+ * acme/database
+ * acme/middleware: acme/database
+ * acme/shop: acme/middleware
+ * acme/admin: acme/middleware, acme/database
+ * </pre>
+ *
+ * Empty lines and lines that start with <code>#</code> are ignored. The stacks are divided
+ * into waves where each stack only depends on stacks in earlier waves, so the stacks of a
+ * wave can be deployed concurrently.
+ */
+public class DeploymentPlan {
+	private static void checkStack(String stack, int lineNumber) {
+		String[] split = stack.split("/");
+		if(split.length != 2 || split[0].isEmpty() || split[1].isEmpty())
+			throw new IllegalArgumentException("Line " + lineNumber + ": stack " + stack +
+					" is not in the form <owner>/<name>");
+	}
+
+	/**
+	 * Parses a plan.
+	 *
+	 * @param text
+	 *        The plan
+	 * @return The parsed plan
+	 * @throws IllegalArgumentException
+	 *         if the plan is empty, if a stack is malformed or declared twice, if a stack
+	 *         depends on a stack that isn't declared or if the dependencies form a cycle
+	 */
+	public static DeploymentPlan parse(String text) {
+		Map<String, List<String>> dependencies = new LinkedHashMap<String, List<String>>();
+		int lineNumber = 0;
+		if(text != null)
+			for(String line : text.split("\r?\n")) {
+				++lineNumber;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				int colon = line.indexOf(':');
+				String stack = (colon < 0
+						? line
+						: line.substring(0, colon)).trim();
+				checkStack(stack, lineNumber);
+				if(dependencies.containsKey(stack))
+					throw new IllegalArgumentException("Line " + lineNumber + ": stack " + stack +
+							" is declared more than once");
+
+				List<String> stackDependencies = new ArrayList<String>();
+				if(colon >= 0)
+					for(String dependency : line.substring(colon + 1).trim().split("[,\\s]+")) {
+						if(dependency.isEmpty() || stackDependencies.contains(dependency))
+							continue;
+						checkStack(dependency, lineNumber);
+						if(dependency.equals(stack))
+							throw new IllegalArgumentException("Line " + lineNumber + ": stack " + stack +
+									" depends on itself");
+						stackDependencies.add(dependency);
+					}
+				dependencies.put(stack, stackDependencies);
+			}
+
+		if(dependencies.isEmpty())
+			throw new IllegalArgumentException("No stack was specified");
+
+		for(Map.Entry<String, List<String>> entry : dependencies.entrySet())
+			for(String dependency : entry.getValue())
+				if(!dependencies.containsKey(dependency))
+					throw new IllegalArgumentException("Stack " + entry.getKey() + " depends on " + dependency +
+							" which is not part of the deployment");
+
+		return new DeploymentPlan(computeWaves(dependencies));
+	}
+
+	/**
+	 * Assigns each stack to the wave after the last wave of its dependencies. The stacks
+	 * keep the order in which they were declared within each wave.
+	 */
+	private static List<List<String>> computeWaves(Map<String, List<String>> dependencies) {
+		List<List<String>> waves = new ArrayList<List<String>>();
+		Set<String> planned = new HashSet<String>();
+		while(planned.size() < dependencies.size()) {
+			List<String> wave = new ArrayList<String>();
+			nextStack: for(Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+				String stack = entry.getKey();
+				if(planned.contains(stack))
+					continue;
+				for(String dependency : entry.getValue())
+					if(!planned.contains(dependency))
+						continue nextStack;
+				wave.add(stack);
+			}
+
+			if(wave.isEmpty()) {
+				List<String> remaining = new ArrayList<String>(dependencies.keySet());
+				remaining.removeAll(planned);
+				throw new IllegalArgumentException("The dependencies between " + remaining + " form a cycle");
+			}
+
+			planned.addAll(wave);
+			waves.add(Collections.unmodifiableList(wave));
+		}
+		return waves;
+	}
+
+	private final List<List<String>> waves;
+
+	private DeploymentPlan(List<List<String>> waves) {
+		this.waves = Collections.unmodifiableList(waves);
+	}
+
+	/**
+	 * Returns the total number of stacks in the plan.
+	 */
+	public int getStackCount() {
+		int count = 0;
+		for(List<String> wave : waves)
+			count += wave.size();
+		return count;
+	}
+
+	/**
+	 * Returns the stacks grouped in the order that they should be deployed. The stacks of
+	 * one wave don't depend on each other.
+	 */
+	public List<List<String>> getWaves() {
+		return waves;
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.Functions;
+import hudson.model.Action;
+import hudson.model.Api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Aggregated report for a {@link StackOrchestrator}. The report holds one {@link DeploymentResult}
+ * per deployed stack, in the order that the deployments were started, and the stacks that were
+ * skipped because an earlier wave failed. The result for a stack is reached through the path
+ * <build>/stackhammerDeployments/stack/<index>
+ */
+@ExportedBean(defaultVisibility = 999)
+public class DeploymentReport implements Action, Serializable {
+	private static final long serialVersionUID = 8112745001853470163L;
+
+	private final List<DeploymentResult> stacks = new ArrayList<DeploymentResult>();
+
+	private final List<String> skippedStacks = new ArrayList<String>();
+
+	private int waveCount;
+
+	/**
+	 * Adds the result of a deployment that is about to start.
+	 */
+	synchronized void addResult(DeploymentResult result) {
+		stacks.add(result);
+	}
+
+	/**
+	 * Records stacks that will not be deployed.
+	 */
+	synchronized void addSkippedStacks(List<String> skipped) {
+		skippedStacks.addAll(skipped);
+	}
+
+	public Api getApi() {
+		return new Api(this);
+	}
+
+	public String getDisplayName() {
+		return "Deployment Report";
+	}
+
+	/**
+	 * Returns the number of stacks whose deployment failed, was cancelled or is still running.
+	 */
+	public synchronized int getFailedCount() {
+		int count = 0;
+		for(DeploymentResult result : stacks)
+			if(result.isFailed())
+				++count;
+		return count;
+	}
+
+	public String getIconFileName() {
+		return Functions.getResourcePath() + "/plugin/stackhammer/icons/hammer-32x32.png";
+	}
+
+	public String getLargeIconFileName() {
+		return "/plugin/stackhammer/icons/hammer-48x48.png";
+	}
+
+	/**
+	 * Returns the stacks that were not deployed because a deployment in an earlier wave failed.
+	 */
+	@Exported
+	public synchronized List<String> getSkippedStacks() {
+		return Collections.unmodifiableList(new ArrayList<String>(skippedStacks));
+	}
+
+	/**
+	 * Method called by the Stapler dispatcher for the path <build>/stackhammerDeployments/stack/<index>
+	 */
+	public synchronized DeploymentResult getStack(int index) {
+		return index >= 0 && index < stacks.size()
+				? stacks.get(index)
+				: null;
+	}
+
+	@Exported
+	public synchronized List<DeploymentResult> getStacks() {
+		return Collections.unmodifiableList(new ArrayList<DeploymentResult>(stacks));
+	}
+
+	public synchronized String getSummary() {
+		int hostCount = 0;
+		for(DeploymentResult result : stacks)
+			hostCount += result.getHostCount();
+
+		int failed = getFailedCount();
+		StringBuilder bld = new StringBuilder();
+		bld.append(stacks.size());
+		bld.append(" stacks deployed in ");
+		bld.append(waveCount);
+		bld.append(waveCount == 1
+				? " wave, "
+				: " waves, ");
+		if(failed > 0) {
+			bld.append(failed);
+			bld.append(" failed, ");
+		}
+		if(!skippedStacks.isEmpty()) {
+			bld.append(skippedStacks.size());
+			bld.append(" skipped, ");
+		}
+		bld.append(hostCount);
+		bld.append(hostCount == 1
+				? " host"
+				: " hosts");
+		return bld.toString();
+	}
+
+	public String getUrlName() {
+		return "stackhammerDeployments";
+	}
+
+	/**
+	 * Returns the number of waves that were started.
+	 */
+	@Exported
+	public synchronized int getWaveCount() {
+		return waveCount;
+	}
+
+	/**
+	 * Records that another wave has been started.
+	 */
+	synchronized void startWave() {
+		++waveCount;
+	}
+}
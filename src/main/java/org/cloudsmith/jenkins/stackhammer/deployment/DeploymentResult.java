@@ -14,51 +14,86 @@
 package org.cloudsmith.jenkins.stackhammer.deployment;
 
 import hudson.Functions;
+import hudson.model.AbstractBuild;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.codec.binary.Base64;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.cloudsmith.jenkins.stackhammer.common.BuildSummary.Operation;
+import org.cloudsmith.jenkins.stackhammer.common.GraphStore;
 import org.cloudsmith.jenkins.stackhammer.common.StackOpResult;
+import org.cloudsmith.jenkins.stackhammer.validation.ValidationResult;
 import org.cloudsmith.stackhammer.api.model.CatalogGraph;
 import org.cloudsmith.stackhammer.api.model.LogEntry;
 import org.cloudsmith.stackhammer.api.model.MessageWithSeverity;
 import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 @ExportedBean(defaultVisibility = 999)
 public class DeploymentResult extends StackOpResult<List<CatalogGraph>> {
 	public static class HostEntry {
-		private final CatalogGraph catalogGraph;
-
-		private final List<LogEntry> logEntries;
+		private final DeploymentResult owner;
 
 		private final String name;
 
-		private final String machineName;
+		/**
+		 * The indexes of the log entries of this host in the log of the owner
+		 */
+		private int[] entryIndexes = new int[16];
+
+		private int entryCount;
+
+		private CatalogGraph catalogGraph;
+
+		private String firstPhysicalOrigin;
 
-		public HostEntry(String name, String machineName, CatalogGraph catalogGraph, List<LogEntry> logEntries) {
+		HostEntry(DeploymentResult owner, String name, String machineName) {
+			this.owner = owner;
 			this.name = name;
-			this.machineName = machineName;
-			this.catalogGraph = catalogGraph;
-			this.logEntries = logEntries;
+			this.firstPhysicalOrigin = machineName;
+		}
+
+		/**
+		 * Adds a log entry to this host.
+		 *
+		 * @return <code>true</code> if the entry changed the name of the host
+		 */
+		synchronized boolean addLogEntry(int index, String physicalOrigin) {
+			if(entryCount == entryIndexes.length) {
+				int[] newIndexes = new int[entryCount * 2];
+				System.arraycopy(entryIndexes, 0, newIndexes, 0, entryCount);
+				entryIndexes = newIndexes;
+			}
+			entryIndexes[entryCount++] = index;
+			if(firstPhysicalOrigin == null) {
+				firstPhysicalOrigin = physicalOrigin;
+				return firstPhysicalOrigin != null && (catalogGraph == null || catalogGraph.getInstanceID() == null);
+			}
+			return false;
 		}
 
-		public CatalogGraph getCatalogGraph() {
+		public synchronized CatalogGraph getCatalogGraph() {
 			return catalogGraph;
 		}
 
 		public String getCatalogGraphURL() {
-			return catalogGraph == null
+			return getCatalogGraph() == null
 					? null
 					: "catalogGraph/" + getName();
 		}
@@ -67,50 +102,365 @@ public class DeploymentResult extends StackOpResult<List<CatalogGraph>> {
 			return "Host \"" + getName() + '"';
 		}
 
-		public List<LogEntry> getLogEntries() {
-			return logEntries == null
-					? Collections.<LogEntry> emptyList()
-					: logEntries;
+		/**
+		 * Returns a lazy view of the log entries that has been received for this host so far.
+		 */
+		public synchronized List<LogEntry> getLogEntries() {
+			if(entryCount == 0)
+				return Collections.<LogEntry> emptyList();
+
+			// The array is never modified below entryCount so it's safe to share
+			final int[] indexes = entryIndexes;
+			final int count = entryCount;
+			return new AbstractList<LogEntry>() {
+				@Override
+				public LogEntry get(int index) {
+					if(index >= count)
+						throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+					return owner.getLogEntry(indexes[index]);
+				}
+
+				@Override
+				public int size() {
+					return count;
+				}
+			};
 		}
 
-		public int getLogEntryCount() {
-			return logEntries == null
-					? 0
-					: logEntries.size();
+		public synchronized int getLogEntryCount() {
+			return entryCount;
 		}
 
-		public String getMachineName() {
-			return machineName;
+		/**
+		 * Returns the index in the log of the owner of the log entry at the given
+		 * position in the log of this host.
+		 */
+		synchronized int getLogEntryIndex(int index) {
+			if(index < 0 || index >= entryCount)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + entryCount);
+			return entryIndexes[index];
+		}
+
+		public synchronized String getMachineName() {
+			if(catalogGraph != null && catalogGraph.getInstanceID() != null)
+				return catalogGraph.getInstanceID();
+			return firstPhysicalOrigin;
 		}
 
 		public String getName() {
+			String machineName = getMachineName();
 			if(machineName == null)
 				return name;
 
 			return name + " [" + machineName + ']';
 		}
+
+		synchronized void setCatalogGraph(CatalogGraph catalogGraph) {
+			this.catalogGraph = catalogGraph;
+		}
+	}
+
+	/**
+	 * The reason why a deployment ended before the job completed.
+	 */
+	public enum Cancellation {
+		/**
+		 * The build was aborted.
+		 */
+		ABORTED("The build was aborted"),
+
+		/**
+		 * The job did not finish within the maximum time.
+		 */
+		TIMED_OUT("The job didn't finish in time"),
+
+		/**
+		 * The job was cancelled at the Stack Hammer Service.
+		 */
+		CANCELLED("The job was cancelled at the Stack Hammer Service");
+
+		private final String message;
+
+		private Cancellation(String message) {
+			this.message = message;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private static final String UNKNOWN_HOST = "unknown";
+
+	private static final int HOST_ERRORS = 1;
+
+	private static final int HOST_WARNINGS = 2;
+
+	private static final String MACHINE_KEY_PREFIX = "\n";
+
+	private static final String LOG_STORE_NAME = "stackhammer-log";
+
+	/**
+	 * The number of log entries in a page unless the request says otherwise
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	/**
+	 * The maximum number of log entries in a page
+	 */
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	/**
+	 * The number of hosts shown on one page of the report
+	 */
+	public static final int HOST_PAGE_SIZE = 50;
+
+	private static int intParameter(StaplerRequest req, String name, int defaultValue) {
+		String value = req.getParameter(name);
+		return value == null || value.isEmpty()
+				? defaultValue
+				: Integer.parseInt(value);
+	}
+
+	/**
+	 * Claims a log store name by creating its empty index file.
+	 *
+	 * @return <code>true</code> if the name was free
+	 */
+	private static boolean reserveLogStore(File indexFile) {
+		try {
+			return indexFile.createNewFile();
+		}
+		catch(IOException e) {
+			// The store will fail on the first write and report the problem then
+			return !indexFile.exists();
+		}
+	}
+
+	private static boolean matchesSeverity(int severity, String filter) {
+		if("error".equals(filter))
+			return severity == MessageWithSeverity.ERROR || severity == MessageWithSeverity.FATAL;
+		if("warning".equals(filter))
+			return severity == MessageWithSeverity.WARNING || severity == MessageWithSeverity.ERROR ||
+					severity == MessageWithSeverity.FATAL;
+		return true;
 	}
 
 	private static final long serialVersionUID = 6226198097084585053L;
 
+	private final AbstractBuild<?, ?> build;
+
+	/**
+	 * Log entries of results created by earlier versions of this plugin. New results
+	 * keep their entries in a {@link LogStore} in the build directory.
+	 */
 	private List<LogEntry> logEntries;
 
-	private transient Map<String, List<LogEntry>> logEntriesPerHost;
+	/**
+	 * The name of the log store in the build directory
+	 */
+	private String logStoreName;
+
+	private int logEntryCount;
+
+	private transient LogStore logStore;
+
+	/**
+	 * Index of the log entries in results that were stored without a {@link LogStore}
+	 */
+	private transient LogIndex legacyIndex;
+
+	/**
+	 * The severities seen for each host, a combination of {@link #HOST_ERRORS} and
+	 * {@link #HOST_WARNINGS}. Hosts with a logical origin are keyed by that origin
+	 * and other hosts by {@link #MACHINE_KEY_PREFIX} followed by the physical origin.
+	 * The map is <code>null</code> in results that were stored before the counters
+	 * were introduced.
+	 */
+	private HashMap<String, Integer> hostSeverities;
+
+	private int hostsWithErrors;
+
+	private int hostsWithWarnings;
+
+	/**
+	 * The number of hosts that have a catalog graph but no log entries
+	 */
+	private int hostsWithoutLogCount;
+
+	private int errorCount;
 
-	private transient Map<String, List<LogEntry>> logEntriesPerMachine;
+	private int warningCount;
+
+	/**
+	 * Hosts that has produced log entries keyed by logical origin, in the order they first appeared
+	 */
+	private transient Map<String, HostEntry> hostsByOrigin;
+
+	/**
+	 * Hosts for which a catalog graph exists but no log has been produced
+	 */
+	private transient Map<String, HostEntry> hostsWithoutLog;
+
+	/**
+	 * Log entries that origins from machines that are no longer attached to a logical host
+	 */
+	private transient Map<String, HostEntry> hostsByMachine;
 
 	private transient List<HostEntry> hostEntries;
 
-	public synchronized void addLogEntries(List<LogEntry> newLogEntries) {
-		if(logEntries == null)
-			logEntries = new ArrayList<LogEntry>(newLogEntries);
-		else
-			logEntries.addAll(newLogEntries);
+	private transient Map<String, CatalogGraph> graphsByNode;
+
+	private transient Map<String, HostEntry> hostsByName;
+
+	/**
+	 * The directory of the log store when the result has no build
+	 */
+	private transient File rootDir;
+
+	/**
+	 * The validation that preceded the deployment when both were performed by one
+	 * {@link ValidatingDeployer}.
+	 */
+	private ValidationResult validation;
+
+	/**
+	 * The identifier of the deployment job at the Stack Hammer Service
+	 */
+	private String jobIdentifier;
+
+	private Cancellation cancellation;
+
+	private String stack;
+
+	public DeploymentResult(AbstractBuild<?, ?> build) {
+		this(build, build.getRootDir(), null);
+	}
+
+	public DeploymentResult(AbstractBuild<?, ?> build, String stack) {
+		this(build, build.getRootDir(), stack);
+	}
+
+	/**
+	 * Creates a result that isn't attached to a build and keeps its log in <code>rootDir</code>.
+	 * Used by the benchmarks.
+	 */
+	DeploymentResult(File rootDir) {
+		this(null, rootDir, null);
+	}
+
+	private DeploymentResult(AbstractBuild<?, ?> build, File rootDir, String stack) {
+		this.build = build;
+		this.rootDir = rootDir;
+		this.stack = stack;
+
+		// Make sure that we don't share the store with another deployment in the same build,
+		// including deployments that run concurrently and haven't written any entries yet
+		String name = LOG_STORE_NAME;
+		for(int idx = 2; !reserveLogStore(new File(rootDir, name + ".idx")); ++idx)
+			name = LOG_STORE_NAME + '-' + idx;
+		logStoreName = name;
+		hostSeverities = new HashMap<String, Integer>();
+	}
+
+	public synchronized void addLogEntries(List<LogEntry> newLogEntries) throws IOException {
+		initCounters();
+		getLogStore().append(newLogEntries);
+		int firstIndex = logEntryCount;
+		logEntryCount += newLogEntries.size();
+
+		LogIndex columns = getLogIndex();
+		countLogEntries(columns, firstIndex, logEntryCount);
+		if(getResult() != null)
+			countHostsWithoutLog();
+
+		if(hostsByOrigin != null)
+			indexLogEntries(columns, firstIndex, logEntryCount);
+	}
+
+	private void attachCatalogGraphs() {
+		hostsWithoutLog.clear();
+		List<CatalogGraph> graphs = getResult();
+		if(graphs == null) {
+			graphsByNode = null;
+			return;
+		}
 
-		// Invalidate cached entries if any
+		graphsByNode = new HashMap<String, CatalogGraph>();
+		for(CatalogGraph cg : graphs) {
+			String nodeName = cg.getNodeName();
+			graphsByNode.put(nodeName, cg);
+			HostEntry host = hostsByOrigin.get(nodeName);
+			if(host == null) {
+				// In the unlikely event that we have a catalog graph for which no log
+				// has been produced
+				host = hostsWithoutLog.get(nodeName);
+				if(host == null) {
+					host = new HostEntry(this, nodeName, null);
+					hostsWithoutLog.put(nodeName, host);
+				}
+			}
+			host.setCatalogGraph(cg);
+		}
 		hostEntries = null;
-		logEntriesPerHost = null;
-		logEntriesPerMachine = null;
+		hostsByName = null;
+	}
+
+	/**
+	 * Counts the hosts that have a catalog graph but no log entries.
+	 */
+	private void countHostsWithoutLog() {
+		hostsWithoutLogCount = 0;
+		List<CatalogGraph> graphs = getResult();
+		if(graphs != null)
+			for(CatalogGraph cg : graphs)
+				if(!hostSeverities.containsKey(cg.getNodeName()))
+					++hostsWithoutLogCount;
+	}
+
+	/**
+	 * Updates the counters with the entries from <code>from</code> to <code>to</code>. Hosts
+	 * are identified the same way as in {@link #indexLogEntries(LogIndex, int, int)}.
+	 */
+	private void countLogEntries(LogIndex columns, int from, int to) {
+		for(int entryIndex = from; entryIndex < to; ++entryIndex) {
+			int flag;
+			switch(columns.getSeverity(entryIndex)) {
+				case MessageWithSeverity.FATAL:
+				case MessageWithSeverity.ERROR:
+					++errorCount;
+					flag = HOST_ERRORS;
+					break;
+				case MessageWithSeverity.WARNING:
+					++warningCount;
+					flag = HOST_WARNINGS;
+					break;
+				default:
+					flag = 0;
+			}
+
+			String key = columns.getLogicalOrigin(entryIndex);
+			if(key == null) {
+				String machineName = columns.getPhysicalOrigin(entryIndex);
+				if(machineName == null)
+					continue;
+				key = MACHINE_KEY_PREFIX + machineName;
+			}
+
+			Integer old = hostSeverities.get(key);
+			int oldFlags = old == null
+					? 0
+					: old.intValue();
+			int newFlags = oldFlags | flag;
+			if(old != null && newFlags == oldFlags)
+				continue;
+
+			hostSeverities.put(key, Integer.valueOf(newFlags));
+			if((newFlags & ~oldFlags & HOST_ERRORS) != 0)
+				++hostsWithErrors;
+			if((newFlags & ~oldFlags & HOST_WARNINGS) != 0)
+				++hostsWithWarnings;
+		}
 	}
 
 	@Override
@@ -122,6 +472,15 @@ public class DeploymentResult extends StackOpResult<List<CatalogGraph>> {
 		catch(CloneNotSupportedException e) {
 			throw new RuntimeException("Error cloning BuildData", e);
 		}
+		clone.hostsByOrigin = null;
+		clone.hostsWithoutLog = null;
+		clone.hostsByMachine = null;
+		clone.hostEntries = null;
+		clone.graphsByNode = null;
+		clone.hostsByName = null;
+		clone.legacyIndex = null;
+		if(hostSeverities != null)
+			clone.hostSeverities = new HashMap<String, Integer>(hostSeverities);
 		return clone;
 	}
 
@@ -137,85 +496,232 @@ public class DeploymentResult extends StackOpResult<List<CatalogGraph>> {
 	public void doCatalogGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
 		String name = req.getRestOfPath();
 		if(!(name == null || name.isEmpty())) {
-			name = name.substring(1);
-			for(HostEntry he : getHostEntries()) {
-				if(name.equals(he.getName())) {
-					CatalogGraph graph = he.getCatalogGraph();
-					if(graph != null) {
-						rsp.setContentType("image/svg+xml");
-						OutputStream out = rsp.getOutputStream();
-						try {
-							byte[] svgData = Base64.decodeBase64(graph.getCatalogGraph());
-							// svgData = GraphTrimmer.stripFixedSize(svgData);
-							rsp.setContentLength(svgData.length);
-							out.write(svgData);
-							return;
-						}
-						finally {
-							out.close();
-						}
-					}
+			HostEntry he = getHostEntry(name.substring(1));
+			CatalogGraph graph = he == null
+					? null
+					: he.getCatalogGraph();
+			if(graph != null) {
+				if(build == null) {
+					// Results from earlier versions of this plugin don't know their build
+					GraphStore.serveDecoded(rsp, graph.getCatalogGraph());
+					return;
 				}
+
+				// Qualify the name with the stack since several stacks may be deployed by one build
+				String stack = getStack();
+				String graphName = stack == null
+						? "catalog-" + graph.getNodeName()
+						: "catalog-" + stack + '-' + graph.getNodeName();
+				GraphStore.serve(req, rsp, GraphStore.getGraphFile(build, graphName), graph.getCatalogGraph());
+				return;
 			}
 		}
 		rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
 	}
 
+	/**
+	 * Method called by the Stapler dispatcher. It corresponds to the path
+	 * <build>/stackhammerDeployment/logEntries and returns one page of the log
+	 * entries of a host as JSON. The following query parameters are recognized:
+	 * <dl>
+	 * <dt>host</dt>
+	 * <dd>The name of the host as returned by {@link HostEntry#getName()}</dd>
+	 * <dt>offset</dt>
+	 * <dd>The index of the first entry to consider. Defaults to 0</dd>
+	 * <dt>limit</dt>
+	 * <dd>The maximum number of entries to return. Defaults to {@link #DEFAULT_PAGE_SIZE}</dd>
+	 * <dt>severity</dt>
+	 * <dd>&quot;warning&quot; to only return warnings and errors, &quot;error&quot; to
+	 * only return errors. All entries are returned when omitted</dd>
+	 * </dl>
+	 * The response contains the matching entries and the offset to use when
+	 * requesting the next page, or -1 when there are no more entries.
+	 * 
+	 * @param req
+	 * @param rsp
+	 * @throws IOException
+	 */
+	public void doLogEntries(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		HostEntry he = getHostEntry(req.getParameter("host"));
+		if(he == null) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		int offset;
+		int limit;
+		try {
+			offset = intParameter(req, "offset", 0);
+			limit = Math.min(intParameter(req, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+		}
+		catch(NumberFormatException e) {
+			rsp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		String severity = req.getParameter("severity");
+
+		// Entries are filtered on the severity column and only the matching entries are read
+		LogIndex columns = getLogIndex();
+		int top = he.getLogEntryCount();
+		int idx = Math.max(offset, 0);
+		JSONArray entries = new JSONArray();
+		LogStore.Reader reader = openLogReader();
+		try {
+			for(; idx < top && entries.size() < limit; ++idx) {
+				int entryIndex = he.getLogEntryIndex(idx);
+				if(!matchesSeverity(columns.getSeverity(entryIndex), severity))
+					continue;
+
+				LogEntry le = reader == null
+						? getLogEntry(entryIndex)
+						: reader.get(entryIndex);
+				JSONObject entry = new JSONObject();
+				entry.put("severity", le.getSeverityString());
+				entry.put("message", le.getMessage());
+				entry.put("details", le.getDetails());
+				entries.add(entry);
+			}
+		}
+		finally {
+			if(reader != null)
+				reader.close();
+		}
+
+		JSONObject page = new JSONObject();
+		page.put("host", he.getName());
+		page.put("total", Integer.valueOf(top));
+		page.put("entries", entries);
+		page.put("nextOffset", Integer.valueOf(idx < top
+				? idx
+				: -1));
+
+		rsp.setContentType("application/json;charset=UTF-8");
+		PrintWriter writer = rsp.getWriter();
+		try {
+			writer.print(page.toString());
+		}
+		finally {
+			writer.close();
+		}
+	}
+
 	@Override
 	public String getDisplayName() {
 		return "Deployment Report";
 	}
 
+	/**
+	 * Returns the host with the given name.
+	 *
+	 * @param name
+	 *        The name of the host as returned by {@link HostEntry#getName()}
+	 * @return The host or <code>null</code> if no such host exists
+	 */
+	public synchronized HostEntry getHostEntry(String name) {
+		if(hostsByName == null) {
+			List<HostEntry> hosts = getHostEntries();
+			hostsByName = new HashMap<String, HostEntry>(hosts.size() * 2);
+			for(HostEntry host : hosts)
+				hostsByName.put(host.getName(), host);
+		}
+		return hostsByName.get(name);
+	}
+
 	public synchronized List<HostEntry> getHostEntries() {
 		if(hostEntries != null)
 			return hostEntries;
 
-		List<HostEntry> result = new ArrayList<HostEntry>();
-		List<CatalogGraph> graphs = getResult();
-		for(Map.Entry<String, List<LogEntry>> logEntries : getLogEntriesPerHost().entrySet()) {
-			String hostName = logEntries.getKey();
-			String machineName = null;
-			CatalogGraph catalogGraph = null;
-			if(graphs != null) {
-				for(CatalogGraph cg : graphs) {
-					if(hostName.equals(cg.getNodeName())) {
-						catalogGraph = cg;
-						machineName = cg.getInstanceID();
-						break;
-					}
-				}
-			}
+		initIndex();
+		List<HostEntry> result = new ArrayList<HostEntry>(hostsByOrigin.size() + hostsWithoutLog.size() +
+				hostsByMachine.size());
+		result.addAll(hostsByOrigin.values());
+		result.addAll(hostsWithoutLog.values());
+		result.addAll(hostsByMachine.values());
+		hostEntries = Collections.unmodifiableList(result);
+		return hostEntries;
+	}
 
-			List<LogEntry> les = logEntries.getValue();
-			if(machineName == null) {
-				for(LogEntry le : les) {
-					machineName = le.getPhysicalOrigin();
-					if(machineName != null)
-						break;
-				}
-			}
-			result.add(new HostEntry(hostName, machineName, catalogGraph, les));
-		}
+	/**
+	 * Returns the hosts on the page that starts at the given offset.
+	 *
+	 * @param offset
+	 *        The offset as returned by {@link #getHostPageOffset(String)}
+	 * @return At most {@link #HOST_PAGE_SIZE} hosts
+	 */
+	public List<HostEntry> getHostEntries(int offset) {
+		List<HostEntry> hosts = getHostEntries();
+		return hosts.subList(offset, Math.min(offset + HOST_PAGE_SIZE, hosts.size()));
+	}
 
-		// In the unlikely event that we have a catalog graph for which no log
-		// has been produced
-		if(graphs != null) {
-			for(CatalogGraph cg : graphs) {
-				if(getLogEntriesPerHost().containsKey(cg.getNodeName()))
-					continue;
-				result.add(new HostEntry(cg.getNodeName(), cg.getInstanceID(), cg, Collections.<LogEntry> emptyList()));
-			}
+	public int getHostEntryCount() {
+		return getHostEntries().size();
+	}
+
+	public int getHostPageSize() {
+		return HOST_PAGE_SIZE;
+	}
+
+	/**
+	 * Returns the offset of the page of hosts that contains the host at the given offset.
+	 *
+	 * @param offset
+	 *        The requested offset, typically a query parameter of the report. May be <code>null</code>
+	 * @return The offset of the first host on the page, or 0 if the requested offset isn't valid
+	 */
+	public int getHostPageOffset(String offset) {
+		int idx;
+		try {
+			idx = offset == null
+					? 0
+					: Integer.parseInt(offset);
 		}
+		catch(NumberFormatException e) {
+			idx = 0;
+		}
+		if(idx < 0 || idx >= getHostEntryCount())
+			idx = 0;
+		return idx - idx % HOST_PAGE_SIZE;
+	}
 
-		for(Map.Entry<String, List<LogEntry>> logEntries : getLogEntriesPerMachine().entrySet())
-			result.add(new HostEntry("unknown", logEntries.getKey(), null, logEntries.getValue()));
+	/**
+	 * Returns the number of log entries with severity error or fatal.
+	 */
+	public synchronized int getErrorCount() {
+		initCounters();
+		return errorCount;
+	}
 
-		hostEntries = result;
-		return result;
+	/**
+	 * Returns the number of hosts that has been deployed, i.e. the hosts that
+	 * have produced log entries or have a catalog graph.
+	 */
+	public synchronized int getHostCount() {
+		initCounters();
+		return hostSeverities.size() + hostsWithoutLogCount;
 	}
 
-	public int getHostEntryCount() {
-		return getHostEntries().size();
+	/**
+	 * Returns the number of hosts that has log entries with severity error or fatal.
+	 */
+	public synchronized int getHostsWithErrors() {
+		initCounters();
+		return hostsWithErrors;
+	}
+
+	/**
+	 * Returns the number of hosts that has log entries with severity warning.
+	 */
+	public synchronized int getHostsWithWarnings() {
+		initCounters();
+		return hostsWithWarnings;
+	}
+
+	/**
+	 * Returns the number of log entries with severity warning.
+	 */
+	public synchronized int getWarningCount() {
+		initCounters();
+		return warningCount;
 	}
 
 	@Override
@@ -228,95 +734,199 @@ public class DeploymentResult extends StackOpResult<List<CatalogGraph>> {
 		return "/plugin/stackhammer/icons/hammer-48x48.png";
 	}
 
-	public List<LogEntry> getLogEntries() {
-		return logEntries == null
+	/**
+	 * Returns a lazy view of all log entries received so far.
+	 */
+	public synchronized List<LogEntry> getLogEntries() {
+		if(logEntries != null)
+			return Collections.unmodifiableList(logEntries);
+		return logStoreName == null
 				? Collections.<LogEntry> emptyList()
-				: logEntries;
+				: getLogStore().view();
 	}
 
-	private synchronized Map<String, List<LogEntry>> getLogEntriesPerHost() {
-		if(logEntriesPerHost != null)
-			return logEntriesPerHost;
+	LogEntry getLogEntry(int idx) {
+		List<LogEntry> legacyEntries;
+		synchronized(this) {
+			legacyEntries = logEntries;
+		}
+		return legacyEntries != null
+				? legacyEntries.get(idx)
+				: getLogStore().get(idx);
+	}
 
-		for(LogEntry le : getLogEntries()) {
-			String hostName = le.getLogicalOrigin();
-			if(hostName == null)
-				continue;
+	/**
+	 * Returns the number of bytes used to store the log entries.
+	 */
+	synchronized long getLogDataLength() {
+		return logEntries != null || logStoreName == null
+				? 0
+				: getLogStore().getDataLength();
+	}
 
-			if(logEntriesPerHost == null)
-				logEntriesPerHost = new HashMap<String, List<LogEntry>>();
-			List<LogEntry> hostEntries = logEntriesPerHost.get(hostName);
-			if(hostEntries == null) {
-				hostEntries = new ArrayList<LogEntry>();
-				logEntriesPerHost.put(hostName, hostEntries);
+	/**
+	 * Returns the total number of log entries received so far.
+	 */
+	public synchronized int getLogEntryCount() {
+		return logEntries != null
+				? logEntries.size()
+				: logEntryCount;
+	}
+
+	/**
+	 * Returns the columnar index of the log entries.
+	 */
+	private synchronized LogIndex getLogIndex() {
+		if(logEntries != null || logStoreName == null) {
+			if(legacyIndex == null) {
+				legacyIndex = new LogIndex();
+				if(logEntries != null)
+					for(LogEntry le : logEntries)
+						legacyIndex.add(le);
 			}
-			hostEntries.add(le);
+			return legacyIndex;
+		}
+
+		try {
+			return getLogStore().getLogIndex();
+		}
+		catch(IOException e) {
+			throw new RuntimeException("Unable to read the log index of " + build, e);
 		}
-		if(logEntriesPerHost == null)
-			logEntriesPerHost = Collections.emptyMap();
-		return logEntriesPerHost;
 	}
 
 	/**
-	 * Returns the log entries that origins from machines that are no longer
-	 * attached to a logical host.
+	 * Returns a reader of the log store, or <code>null</code> if the entries
+	 * aren't kept in a log store.
 	 */
-	private synchronized Map<String, List<LogEntry>> getLogEntriesPerMachine() {
-		if(logEntriesPerMachine != null)
-			return logEntriesPerMachine;
-
-		for(LogEntry le : getLogEntries()) {
-			if(le.getLogicalOrigin() != null)
-				continue;
+	private synchronized LogStore.Reader openLogReader() {
+		return logEntries != null || logStoreName == null
+				? null
+				: getLogStore().openReader();
+	}
 
-			String machineName = le.getPhysicalOrigin();
-			if(machineName == null)
-				continue;
+	private synchronized LogStore getLogStore() {
+		if(logStore == null)
+			logStore = new LogStore(build == null
+					? rootDir
+					: build.getRootDir(), logStoreName);
+		return logStore;
+	}
 
-			if(logEntriesPerMachine == null)
-				logEntriesPerMachine = new HashMap<String, List<LogEntry>>();
+	/**
+	 * Adds the entries from <code>from</code> to <code>to</code> to the host index.
+	 */
+	private void indexLogEntries(LogIndex columns, int from, int to) {
+		for(int entryIndex = from; entryIndex < to; ++entryIndex) {
+			String hostName = columns.getLogicalOrigin(entryIndex);
+			String machineName = columns.getPhysicalOrigin(entryIndex);
+			HostEntry host;
+			if(hostName != null) {
+				host = hostsByOrigin.get(hostName);
+				if(host == null) {
+					host = hostsWithoutLog.remove(hostName);
+					if(host == null) {
+						host = new HostEntry(this, hostName, null);
+						if(graphsByNode != null)
+							host.setCatalogGraph(graphsByNode.get(hostName));
+					}
+					hostsByOrigin.put(hostName, host);
+					hostEntries = null;
+					hostsByName = null;
+				}
+			}
+			else {
+				if(machineName == null)
+					continue;
 
-			List<LogEntry> machineEntries = logEntriesPerMachine.get(machineName);
-			if(machineEntries == null) {
-				machineEntries = new ArrayList<LogEntry>();
-				logEntriesPerMachine.put(machineName, machineEntries);
+				host = hostsByMachine.get(machineName);
+				if(host == null) {
+					host = new HostEntry(this, UNKNOWN_HOST, machineName);
+					hostsByMachine.put(machineName, host);
+					hostEntries = null;
+					hostsByName = null;
+				}
 			}
-			machineEntries.add(le);
+			if(host.addLogEntry(entryIndex, machineName))
+				hostsByName = null;
 		}
-		if(logEntriesPerMachine == null)
-			logEntriesPerMachine = Collections.emptyMap();
-		return logEntriesPerMachine;
 	}
 
-	public String getSummary() {
-		int hostsWithErrors = 0;
-		int hostsWithWarnings = 0;
-		List<HostEntry> hosts = getHostEntries();
-		int hostCount = hosts.size();
+	/**
+	 * The counters are maintained as log entries and results are added. Results that
+	 * were stored before the counters were introduced get them computed once, the first
+	 * time they are needed.
+	 */
+	private void initCounters() {
+		if(hostSeverities != null)
+			return;
+
+		hostSeverities = new HashMap<String, Integer>();
+		hostsWithErrors = 0;
+		hostsWithWarnings = 0;
+		errorCount = 0;
+		warningCount = 0;
+		LogIndex columns = getLogIndex();
+		countLogEntries(columns, 0, columns.size());
+		countHostsWithoutLog();
+	}
+
+	/**
+	 * Builds the host index from scratch. This only happens once for each instance, i.e.
+	 * the first time the index is needed after the result was created or loaded.
+	 */
+	private void initIndex() {
+		if(hostsByOrigin != null)
+			return;
+
+		hostsByOrigin = new LinkedHashMap<String, HostEntry>();
+		hostsWithoutLog = new LinkedHashMap<String, HostEntry>();
+		hostsByMachine = new LinkedHashMap<String, HostEntry>();
+		LogIndex columns = getLogIndex();
+		indexLogEntries(columns, 0, columns.size());
+		attachCatalogGraphs();
+	}
+
+	/**
+	 * Returns the reason why the deployment ended before the job completed or <code>null</code>
+	 * if the job completed.
+	 */
+	@Exported
+	public synchronized Cancellation getCancellation() {
+		return cancellation;
+	}
+
+	/**
+	 * Returns the identifier of the deployment job at the Stack Hammer Service or <code>null</code>
+	 * if no job was started.
+	 */
+	@Exported
+	public synchronized String getJobIdentifier() {
+		return jobIdentifier;
+	}
+
+	/**
+	 * Returns the name of the deployed stack in the form &lt;owner&gt;/&lt;name&gt;. The
+	 * name is obtained from the repository for results that were stored before the
+	 * name was recorded.
+	 */
+	@Override
+	public String getStack() {
+		return stack == null
+				? super.getStack()
+				: stack;
+	}
+
+	public synchronized String getSummary() {
+		if(cancellation != null)
+			return cancellation.getMessage() + " after " + getHostCount() + " hosts had reported";
+		if(validation != null && validation.isFailed())
+			return "Validation failed: " + validation.getSummary();
+
+		int hostCount = getHostCount();
 		if(hostCount == 0)
 			return "No hosts deployed";
 
-		for(int idx = 0; idx < hostCount; ++idx) {
-			boolean hasErrors = false;
-			boolean hasWarnings = false;
-			for(LogEntry le : hosts.get(idx).getLogEntries()) {
-				switch(le.getSeverity()) {
-					case MessageWithSeverity.FATAL:
-					case MessageWithSeverity.ERROR:
-						hasErrors = true;
-						break;
-					case MessageWithSeverity.WARNING:
-						hasWarnings = true;
-				}
-				if(hasErrors && hasWarnings)
-					break;
-			}
-			if(hasErrors)
-				hostsWithErrors++;
-			if(hasWarnings)
-				hostsWithWarnings++;
-		}
-
 		StringBuilder bld = new StringBuilder();
 		bld.append(hostCount);
 		bld.append(" host");
@@ -345,12 +955,43 @@ public class DeploymentResult extends StackOpResult<List<CatalogGraph>> {
 		return "stackhammerDeployment";
 	}
 
+	/**
+	 * Returns the validation that preceded the deployment or <code>null</code> if the
+	 * stack was deployed without validation. Called by the Stapler dispatcher for the
+	 * path <build>/stackhammerDeployment/validation
+	 */
+	public ValidationResult getValidation() {
+		return validation;
+	}
+
 	/**
 	 * @param validationDiagnostic the validationDiagnostic to set
 	 */
 	@Override
-	public void setResult(ResultWithDiagnostic<List<CatalogGraph>> resultDiagnostic) {
+	public synchronized void setResult(ResultWithDiagnostic<List<CatalogGraph>> resultDiagnostic) {
 		super.setResult(resultDiagnostic);
-		hostEntries = null;
+		initCounters();
+		countHostsWithoutLog();
+		if(hostsByOrigin != null)
+			attachCatalogGraphs();
+	}
+
+	synchronized void setCancellation(Cancellation cancellation) {
+		this.cancellation = cancellation;
+	}
+
+	synchronized void setJobIdentifier(String jobIdentifier) {
+		this.jobIdentifier = jobIdentifier;
+	}
+
+	void setValidation(ValidationResult validation) {
+		this.validation = validation;
+	}
+
+	@Override
+	public synchronized Operation summarize() {
+		return new Operation(
+			Operation.DEPLOYMENT, getStack(), isFailed(), getErrorCount(), getWarningCount(), getHostCount(),
+			getTimings());
 	}
 }
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+
+/**
+ * Keeps track of the position in the log of one job and removes entries that
+ * the service sends more than once. The entries carry no sequence number, so
+ * an entry can only be recognized by its content. Since a message may well be
+ * logged several times, entries are only dropped when a batch verifiably starts
+ * with the whole log received so far, entry by entry. Entries at the start of a
+ * batch that merely repeat the last accepted entries are kept, but counted as
+ * suspected duplicates.
+ * <p>
+ * The cursor only keeps the last {@link #WINDOW} accepted entries and a
+ * fingerprint of the whole log. A batch starts with the log received so far if
+ * its first entries have the same fingerprint and end with the same entries.
+ * </p>
+ */
+public class LogCursor {
+	/**
+	 * The maximum number of entries that are compared when looking for entries that
+	 * repeat the last accepted entries.
+	 */
+	public static final int WINDOW = 64;
+
+	private static final long FINGERPRINT_PRIME = 1099511628211L;
+
+	private static boolean equal(Object a, Object b) {
+		return a == null
+				? b == null
+				: a.equals(b);
+	}
+
+	/**
+	 * Compares the content of two entries. {@link LogEntry} doesn't implement
+	 * <code>equals</code>, and the entries are unmarshalled anew on each poll.
+	 */
+	/**
+	 * Adds an entry to a fingerprint. The fingerprint depends on the order of the entries.
+	 */
+	private static long fingerprint(long fingerprint, LogEntry entry) {
+		return fingerprint * FINGERPRINT_PRIME + hash(entry);
+	}
+
+	private static int hash(LogEntry entry) {
+		int hash = entry.getSeverity();
+		hash = 31 * hash + hash(entry.getMessage());
+		hash = 31 * hash + hash(entry.getLogicalOrigin());
+		hash = 31 * hash + hash(entry.getPhysicalOrigin());
+		return 31 * hash + hash(entry.getDetails());
+	}
+
+	private static int hash(Object value) {
+		return value == null
+				? 0
+				: value.hashCode();
+	}
+
+	static boolean sameEntry(LogEntry a, LogEntry b) {
+		return a.getSeverity() == b.getSeverity() && equal(a.getMessage(), b.getMessage()) &&
+				equal(a.getLogicalOrigin(), b.getLogicalOrigin()) &&
+				equal(a.getPhysicalOrigin(), b.getPhysicalOrigin()) && equal(a.getDetails(), b.getDetails());
+	}
+
+	/**
+	 * The last accepted entries. The entry at position <code>p</code> of the log is
+	 * kept at index <code>p % WINDOW</code>.
+	 */
+	private final LogEntry[] tail = new LogEntry[WINDOW];
+
+	private int position;
+
+	private long fingerprint;
+
+	private int duplicateCount;
+
+	private int suspectedDuplicateCount;
+
+	/**
+	 * Returns the entries of <code>batch</code> that have not been seen before and
+	 * advances the cursor past them.
+	 *
+	 * @param batch
+	 *        The entries received from one poll. Might be <code>null</code>
+	 * @return The new entries, possibly empty
+	 */
+	public synchronized List<LogEntry> advance(List<LogEntry> batch) {
+		if(batch == null || batch.isEmpty())
+			return Collections.emptyList();
+
+		int skip = isResentLog(batch)
+				? position
+				: 0;
+		duplicateCount += skip;
+
+		// A copy so that the caller doesn't keep the whole batch alive
+		List<LogEntry> fresh = new ArrayList<LogEntry>(batch.subList(skip, batch.size()));
+		suspectedDuplicateCount += repeatedTailCount(fresh);
+		for(LogEntry entry : fresh) {
+			tail[position % WINDOW] = entry;
+			fingerprint = fingerprint(fingerprint, entry);
+			++position;
+		}
+		return fresh;
+	}
+
+	/**
+	 * Returns the accepted entry at the given position. Only the last {@link #WINDOW}
+	 * positions are available.
+	 */
+	private LogEntry accepted(int idx) {
+		return tail[idx % WINDOW];
+	}
+
+	/**
+	 * Returns the number of entries that have been dropped because the whole log was sent again.
+	 */
+	public synchronized int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Returns the number of entries that have been accepted.
+	 */
+	public synchronized int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the number of accepted entries that repeated the entries accepted just before
+	 * them. Such entries may have been sent twice by the service or logged twice by the job.
+	 */
+	public synchronized int getSuspectedDuplicateCount() {
+		return suspectedDuplicateCount;
+	}
+
+	/**
+	 * Checks if <code>batch</code> starts with all entries that have been accepted.
+	 */
+	private boolean isResentLog(List<LogEntry> batch) {
+		if(position == 0 || batch.size() < position)
+			return false;
+		for(int idx = Math.max(0, position - WINDOW); idx < position; ++idx)
+			if(!sameEntry(batch.get(idx), accepted(idx)))
+				return false;
+
+		long batchFingerprint = 0;
+		for(int idx = 0; idx < position; ++idx)
+			batchFingerprint = fingerprint(batchFingerprint, batch.get(idx));
+		return batchFingerprint == fingerprint;
+	}
+
+	/**
+	 * Returns the length of the longest start of <code>batch</code>, up to {@link #WINDOW}
+	 * entries, that equals the last entries that were accepted.
+	 */
+	private int repeatedTailCount(List<LogEntry> batch) {
+		for(int count = Math.min(Math.min(batch.size(), position), WINDOW); count > 0; --count) {
+			int idx = 0;
+			while(idx < count && sameEntry(batch.get(idx), accepted(position - count + idx)))
+				++idx;
+			if(idx == count)
+				return count;
+		}
+		return 0;
+	}
+}
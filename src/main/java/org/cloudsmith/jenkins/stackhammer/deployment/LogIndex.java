@@ -0,0 +1,151 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+
+/**
+ * A compact, columnar view of the attributes of log entries that are needed to
+ * group and filter them. The severity of each entry is kept in a byte array and
+ * the logical and physical origins are dictionary encoded in int arrays, so
+ * an origin string is held once no matter how many entries refer to it.
+ */
+public class LogIndex {
+	/**
+	 * The origin identifier used when an entry has no origin.
+	 */
+	public static final int NO_ORIGIN = -1;
+
+	private final List<String> origins = new ArrayList<String>();
+
+	private final Map<String, Integer> originIds = new HashMap<String, Integer>();
+
+	private byte[] severities = new byte[256];
+
+	private int[] logicalOrigins = new int[256];
+
+	private int[] physicalOrigins = new int[256];
+
+	private int size;
+
+	/**
+	 * Adds the attributes of an entry to the end of the index.
+	 */
+	public synchronized void add(LogEntry logEntry) {
+		add(logEntry.getSeverity(), originId(logEntry.getLogicalOrigin()), originId(logEntry.getPhysicalOrigin()));
+	}
+
+	synchronized void add(int severity, int logicalOrigin, int physicalOrigin) {
+		if(size == severities.length) {
+			int newLength = size * 2;
+			byte[] newSeverities = new byte[newLength];
+			System.arraycopy(severities, 0, newSeverities, 0, size);
+			severities = newSeverities;
+			int[] newOrigins = new int[newLength];
+			System.arraycopy(logicalOrigins, 0, newOrigins, 0, size);
+			logicalOrigins = newOrigins;
+			newOrigins = new int[newLength];
+			System.arraycopy(physicalOrigins, 0, newOrigins, 0, size);
+			physicalOrigins = newOrigins;
+		}
+		severities[size] = (byte) severity;
+		logicalOrigins[size] = logicalOrigin;
+		physicalOrigins[size] = physicalOrigin;
+		++size;
+	}
+
+	/**
+	 * Adds an origin to the dictionary. Origins must be added in the order of their identifiers.
+	 */
+	synchronized void addOrigin(String origin) {
+		originIds.put(origin, Integer.valueOf(origins.size()));
+		origins.add(origin);
+	}
+
+	/**
+	 * Returns the origin with the given identifier.
+	 *
+	 * @return The origin or <code>null</code> for {@link #NO_ORIGIN}
+	 */
+	public synchronized String getOrigin(int originId) {
+		return originId == NO_ORIGIN
+				? null
+				: origins.get(originId);
+	}
+
+	/**
+	 * Returns the number of origins in the dictionary.
+	 */
+	public synchronized int getOriginCount() {
+		return origins.size();
+	}
+
+	synchronized int getLogicalOriginId(int idx) {
+		checkIndex(idx);
+		return logicalOrigins[idx];
+	}
+
+	synchronized int getPhysicalOriginId(int idx) {
+		checkIndex(idx);
+		return physicalOrigins[idx];
+	}
+
+	public synchronized String getLogicalOrigin(int idx) {
+		checkIndex(idx);
+		return getOrigin(logicalOrigins[idx]);
+	}
+
+	public synchronized String getPhysicalOrigin(int idx) {
+		checkIndex(idx);
+		return getOrigin(physicalOrigins[idx]);
+	}
+
+	public synchronized int getSeverity(int idx) {
+		checkIndex(idx);
+		return severities[idx];
+	}
+
+	/**
+	 * Returns the identifier of the given origin. The origin is added to the dictionary
+	 * if it's not already present.
+	 */
+	synchronized int originId(String origin) {
+		if(origin == null)
+			return NO_ORIGIN;
+
+		Integer id = originIds.get(origin);
+		if(id == null) {
+			id = Integer.valueOf(origins.size());
+			addOrigin(origin);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Returns the number of entries in the index.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private void checkIndex(int idx) {
+		if(idx < 0 || idx >= size)
+			throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+	}
+}
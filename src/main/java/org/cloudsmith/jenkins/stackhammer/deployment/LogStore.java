@@ -0,0 +1,406 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.model.Run;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.List;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+
+/**
+ * An append-only store of log entries. The entries are kept in two files. The
+ * data file contains the entries, each one marshalled using compact XML, and
+ * the index file contains the offset of each entry in the data file as an 8
+ * byte integer. Entries are read lazily using positional reads. The files are
+ * only kept open during a read so that they never stay locked and stores of any
+ * size can be read. A {@link Reader} keeps them open while a page of entries
+ * is read.
+ * <p>
+ * The severity and origins of the entries are also kept in a {@link LogIndex}
+ * so that entries can be grouped and filtered without reading them. The index
+ * is stored in two more files. The columns file has one record of
+ * {@link #COLUMN_RECORD_SIZE} bytes per entry and the dictionary file contains
+ * the origin strings in the order of their identifiers.
+ * </p>
+ */
+public class LogStore {
+	/**
+	 * Reads entries using one open handle to each file. Used when a page of
+	 * entries is read so that the files are opened once per page rather than
+	 * once per entry. The reader must be closed when the page has been read.
+	 */
+	public class Reader implements Closeable {
+		private RandomAccessFile index;
+
+		private RandomAccessFile data;
+
+		/**
+		 * Returns the entry at the given index.
+		 *
+		 * @param idx
+		 *        The index of the entry
+		 * @return The entry
+		 * @throws IndexOutOfBoundsException
+		 *         if the index is negative or not less than {@link LogStore#size()}
+		 */
+		public LogEntry get(int idx) {
+			int currentSize;
+			long currentDataLength;
+			synchronized(LogStore.this) {
+				currentSize = size;
+				currentDataLength = dataLength;
+			}
+			if(idx < 0 || idx >= currentSize)
+				throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + currentSize);
+
+			try {
+				if(index == null) {
+					index = new RandomAccessFile(indexFile, "r");
+					data = new RandomAccessFile(dataFile, "r");
+				}
+				boolean last = idx + 1 == currentSize;
+				ByteBuffer offsets = read(index.getChannel(), indexFile, idx * 8L, last
+						? 8
+						: 16);
+				long start = offsets.getLong();
+				long end = last
+						? currentDataLength
+						: offsets.getLong();
+
+				ByteBuffer bytes = read(data.getChannel(), dataFile, start, (int) (end - start));
+				return (LogEntry) Run.XSTREAM.fromXML(new String(bytes.array(), UTF_8));
+			}
+			catch(IOException e) {
+				throw new RuntimeException("Unable to read log entry from " + dataFile, e);
+			}
+		}
+
+		public void close() throws IOException {
+			try {
+				if(index != null)
+					index.close();
+			}
+			finally {
+				if(data != null)
+					data.close();
+				index = null;
+				data = null;
+			}
+		}
+	}
+
+	private static final String UTF_8 = "UTF-8";
+
+	/**
+	 * The size of one record in the columns file: the severity as a byte followed
+	 * by the identifiers of the logical and the physical origin.
+	 */
+	public static final int COLUMN_RECORD_SIZE = 9;
+
+	private static void appendTo(File file, ByteArrayOutputStream bytes) throws IOException {
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			bytes.writeTo(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static byte[] readFully(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(bytes);
+		}
+		finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch(IOException e) {
+			// Nothing was written so there is nothing to lose
+		}
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, File file, long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while(buf.hasRemaining())
+			if(channel.read(buf, position + buf.position()) < 0)
+				throw new EOFException("Unexpected end of " + file);
+		buf.flip();
+		return buf;
+	}
+
+	private final File dataFile;
+
+	private final File indexFile;
+
+	private final File columnsFile;
+
+	private final File dictionaryFile;
+
+	private LogIndex logIndex;
+
+	private int persistedOrigins;
+
+	private int persistedColumns;
+
+	private int size;
+
+	private long dataLength;
+
+	/**
+	 * Opens the store with the given name in the given directory. The store files
+	 * are created when the first entries are appended.
+	 *
+	 * @param dir
+	 *        The directory where the files are kept
+	 * @param name
+	 *        The base name of the store files
+	 */
+	public LogStore(File dir, String name) {
+		dataFile = new File(dir, name + ".dat");
+		indexFile = new File(dir, name + ".idx");
+		columnsFile = new File(dir, name + ".col");
+		dictionaryFile = new File(dir, name + ".dict");
+		size = (int) (indexFile.length() / 8);
+		dataLength = dataFile.length();
+	}
+
+	/**
+	 * Appends entries to the end of the store.
+	 *
+	 * @param logEntries
+	 *        The entries to append
+	 * @throws IOException
+	 */
+	public synchronized void append(List<LogEntry> logEntries) throws IOException {
+		if(logEntries.isEmpty())
+			return;
+
+		LogIndex columns = getLogIndex();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		ByteArrayOutputStream index = new ByteArrayOutputStream(logEntries.size() * 8);
+		DataOutputStream indexOut = new DataOutputStream(index);
+		for(LogEntry logEntry : logEntries) {
+			indexOut.writeLong(dataLength + data.size());
+			Writer writer = new OutputStreamWriter(data, UTF_8);
+			Run.XSTREAM.marshal(logEntry, new CompactWriter(writer));
+			writer.flush();
+		}
+
+		// Data is written before the index so that a reader never finds an
+		// offset that points beyond the end of the data file. The columns are
+		// written last. Columns that are missing are rebuilt from the entries.
+		appendTo(dataFile, data);
+		appendTo(indexFile, index);
+		dataLength += data.size();
+		size += logEntries.size();
+
+		for(LogEntry logEntry : logEntries)
+			columns.add(logEntry);
+		writeColumns();
+	}
+
+	/**
+	 * Returns the entry at the given index.
+	 *
+	 * @param idx
+	 *        The index of the entry
+	 * @return The entry
+	 * @throws IndexOutOfBoundsException
+	 *         if the index is negative or not less than {@link #size()}
+	 */
+	public LogEntry get(int idx) {
+		Reader reader = openReader();
+		try {
+			return reader.get(idx);
+		}
+		finally {
+			closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes in the data file.
+	 */
+	public synchronized long getDataLength() {
+		return dataLength;
+	}
+
+	/**
+	 * Returns the index of the entries in this store. The index is read from disk
+	 * the first time it is requested. Entries that are missing in the stored index,
+	 * because the store was written before the index was introduced or because the
+	 * index could not be written, are read and added to it.
+	 */
+	public synchronized LogIndex getLogIndex() throws IOException {
+		if(logIndex != null)
+			return logIndex;
+
+		LogIndex columns = new LogIndex();
+		if(dictionaryFile.exists()) {
+			byte[] bytes = readFully(dictionaryFile);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			int consumed = 0;
+			try {
+				for(;;) {
+					columns.addOrigin(in.readUTF());
+					consumed = bytes.length - in.available();
+				}
+			}
+			catch(EOFException e) {
+				// Any trailing bytes stem from an incomplete write
+			}
+			if(consumed < bytes.length)
+				truncate(dictionaryFile, consumed);
+		}
+		persistedOrigins = columns.getOriginCount();
+
+		int records = 0;
+		if(columnsFile.exists()) {
+			long length = columnsFile.length();
+			records = (int) Math.min(length / COLUMN_RECORD_SIZE, size);
+			if(records > 0) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(columnsFile)));
+				try {
+					for(int idx = 0; idx < records; ++idx)
+						columns.add(in.readByte(), in.readInt(), in.readInt());
+				}
+				finally {
+					in.close();
+				}
+			}
+			if(length != (long) records * COLUMN_RECORD_SIZE)
+				truncate(columnsFile, (long) records * COLUMN_RECORD_SIZE);
+		}
+		persistedColumns = records;
+
+		if(records < size) {
+			Reader reader = openReader();
+			try {
+				for(int idx = records; idx < size; ++idx)
+					columns.add(reader.get(idx));
+			}
+			finally {
+				closeQuietly(reader);
+			}
+		}
+
+		logIndex = columns;
+		writeColumns();
+		return logIndex;
+	}
+
+	/**
+	 * Returns a reader that keeps the files open until it is closed. The files
+	 * are opened on the first read.
+	 */
+	public Reader openReader() {
+		return new Reader();
+	}
+
+	/**
+	 * Returns the number of entries in the store
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Writes the origins and columns that has been added to the index since the last write.
+	 */
+	private void writeColumns() throws IOException {
+		int originCount = logIndex.getOriginCount();
+		if(persistedOrigins < originCount) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			for(int idx = persistedOrigins; idx < originCount; ++idx)
+				out.writeUTF(logIndex.getOrigin(idx));
+			appendTo(dictionaryFile, bytes);
+			persistedOrigins = originCount;
+		}
+
+		// Columns are written after the origins so that they never refer to a missing origin
+		int count = logIndex.size();
+		if(persistedColumns < count) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((count - persistedColumns) * COLUMN_RECORD_SIZE);
+			DataOutputStream out = new DataOutputStream(bytes);
+			for(int idx = persistedColumns; idx < count; ++idx) {
+				out.writeByte(logIndex.getSeverity(idx));
+				out.writeInt(logIndex.getLogicalOriginId(idx));
+				out.writeInt(logIndex.getPhysicalOriginId(idx));
+			}
+			appendTo(columnsFile, bytes);
+			persistedColumns = count;
+		}
+	}
+
+	/**
+	 * Returns a lazy view of the entries that are currently in the store. Entries
+	 * that are appended after this call are not visible in the view.
+	 */
+	public List<LogEntry> view() {
+		final int viewSize = size();
+		return new AbstractList<LogEntry>() {
+			@Override
+			public LogEntry get(int index) {
+				if(index >= viewSize)
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + viewSize);
+				return LogStore.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return viewSize;
+			}
+		};
+	}
+}
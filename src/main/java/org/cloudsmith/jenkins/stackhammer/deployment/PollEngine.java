@@ -0,0 +1,290 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.cloudsmith.stackhammer.api.model.PollResult;
+import org.cloudsmith.stackhammer.api.service.StackService;
+
+/**
+ * A plugin wide engine that polls all active deployment jobs using a small
+ * pool of threads. A build registers its job using {@link #track(StackService, String, PollSchedule, long, JobListener)}
+ * and then waits for the returned {@link JobTracker} to complete instead of
+ * polling the job by itself.
+ */
+public class PollEngine {
+	/**
+	 * Receives the log entries that are produced by a tracked job. The listener
+	 * is called from one of the threads of the engine.
+	 */
+	public interface JobListener {
+		void logEntriesReceived(List<LogEntry> logEntries) throws IOException;
+	}
+
+	/**
+	 * Polls one job until it completes, is cancelled, or the time runs out.
+	 */
+	public class JobTracker implements Runnable {
+		private final StackService stackService;
+
+		private final String jobIdentifier;
+
+		private final PollSchedule schedule;
+
+		private final long failTime;
+
+		private final JobListener listener;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private final LogCursor cursor = new LogCursor();
+
+		private final long startTime = System.currentTimeMillis();
+
+		private long queueTime = -1;
+
+		private int pollCount;
+
+		private long entriesReceived;
+
+		private PollResult lastResult;
+
+		private PollResult finalResult;
+
+		private Exception error;
+
+		private boolean cancelled;
+
+		private ScheduledFuture<?> nextPoll;
+
+		JobTracker(StackService stackService, String jobIdentifier, PollSchedule schedule, long failTime,
+				JobListener listener) {
+			this.stackService = stackService;
+			this.jobIdentifier = jobIdentifier;
+			this.schedule = schedule;
+			this.failTime = failTime;
+			this.listener = listener;
+		}
+
+		/**
+		 * Stops polling the job. This method has no effect if the job has
+		 * completed already.
+		 */
+		public synchronized void cancel() {
+			if(done.getCount() == 0)
+				return;
+			cancelled = true;
+			if(nextPoll != null)
+				nextPoll.cancel(false);
+			done.countDown();
+		}
+
+		private synchronized void complete(PollResult result, Exception e) {
+			finalResult = result;
+			error = e;
+			done.countDown();
+		}
+
+		private void emitLogEntries(List<LogEntry> logEntries) throws IOException {
+			if(logEntries != null)
+				synchronized(this) {
+					entriesReceived += logEntries.size();
+				}
+			List<LogEntry> fresh = cursor.advance(logEntries);
+			if(!fresh.isEmpty())
+				listener.logEntriesReceived(fresh);
+		}
+
+		/**
+		 * Returns the number of log entries received, including entries that were sent more than once.
+		 */
+		public synchronized long getEntriesReceived() {
+			return entriesReceived;
+		}
+
+		public String getJobIdentifier() {
+			return jobIdentifier;
+		}
+
+		/**
+		 * Returns the cursor that keeps track of the log entries received so far.
+		 */
+		public LogCursor getLogCursor() {
+			return cursor;
+		}
+
+		/**
+		 * Returns the number of times the job has been polled.
+		 */
+		public synchronized int getPollCount() {
+			return pollCount;
+		}
+
+		/**
+		 * Returns the number of milliseconds from the start of the tracking until the job
+		 * was first seen in another state than scheduled, or <code>-1</code> if that hasn't
+		 * happened yet.
+		 */
+		public synchronized long getQueueTime() {
+			return queueTime;
+		}
+
+		/**
+		 * Returns the number of milliseconds since the tracking started.
+		 */
+		public long getTrackingTime() {
+			return System.currentTimeMillis() - startTime;
+		}
+
+		public void run() {
+			synchronized(this) {
+				if(cancelled)
+					return;
+			}
+
+			if(System.currentTimeMillis() > failTime) {
+				complete(null, null);
+				return;
+			}
+
+			try {
+				PollResult pollResult = stackService.pollJob(jobIdentifier);
+				switch(pollResult.getJobState()) {
+					case SCHEDULED:
+						polled(false);
+						break;
+					case STARTING:
+						polled(true);
+						break;
+					case SLEEPING:
+					case RUNNING:
+						polled(true);
+						emitLogEntries(pollResult.getLogEntries());
+						break;
+					case CANCELLED:
+						polled(true);
+						complete(pollResult, null);
+						return;
+					default:
+						polled(true);
+						emitLogEntries(pollResult.getLogEntries());
+						complete(pollResult, null);
+						return;
+				}
+				lastResult = pollResult;
+				scheduleNextPoll();
+			}
+			catch(Exception e) {
+				// Also covers a schedule that fails or an executor that rejects the next poll
+				complete(null, e);
+			}
+		}
+
+		/**
+		 * Counts a poll and records the queue time the first time the job has left the scheduled state.
+		 */
+		private synchronized void polled(boolean leftSchedule) {
+			++pollCount;
+			if(leftSchedule && queueTime < 0)
+				queueTime = System.currentTimeMillis() - startTime;
+		}
+
+		synchronized void scheduleNextPoll() {
+			if(cancelled)
+				return;
+
+			long delay = schedule.nextDelay(lastResult);
+			if(failTime != Long.MAX_VALUE)
+				delay = Math.max(0, Math.min(delay, failTime - System.currentTimeMillis() + 1));
+			nextPoll = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Waits until the job completes.
+		 *
+		 * @return The last result obtained from the job or <code>null</code> if the
+		 *         job didn't finish in time or if the tracker was cancelled.
+		 * @throws InterruptedException
+		 *         if the calling thread is interrupted while waiting
+		 * @throws ExecutionException
+		 *         if polling the job resulted in an exception
+		 */
+		public PollResult waitForCompletion() throws InterruptedException, ExecutionException {
+			done.await();
+			synchronized(this) {
+				if(error != null)
+					throw new ExecutionException(error);
+				return finalResult;
+			}
+		}
+	}
+
+	/**
+	 * The number of threads used for polling.
+	 */
+	public static final int POOL_SIZE = 4;
+
+	private static final PollEngine instance = new PollEngine();
+
+	public static PollEngine getInstance() {
+		return instance;
+	}
+
+	private final ScheduledExecutorService executor;
+
+	private PollEngine() {
+		executor = Executors.newScheduledThreadPool(POOL_SIZE, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Stack Hammer poller " + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Starts tracking a job.
+	 *
+	 * @param stackService
+	 *        The service used when polling the job
+	 * @param jobIdentifier
+	 *        The identifier of the job
+	 * @param schedule
+	 *        Schedule that controls the delay between polls
+	 * @param failTime
+	 *        The time when the tracking is considered to have failed or {@link Long#MAX_VALUE} for no limit
+	 * @param listener
+	 *        The listener that will receive produced log entries
+	 * @return A tracker that can be used to wait for the completion of the job
+	 */
+	public JobTracker track(StackService stackService, String jobIdentifier, PollSchedule schedule, long failTime,
+			JobListener listener) {
+		JobTracker tracker = new JobTracker(stackService, jobIdentifier, schedule, failTime, listener);
+		tracker.scheduleNextPoll();
+		return tracker;
+	}
+}
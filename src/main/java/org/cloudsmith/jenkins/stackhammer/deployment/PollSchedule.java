@@ -0,0 +1,31 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import org.cloudsmith.stackhammer.api.model.PollResult;
+
+/**
+ * Decides how long to wait between polls of one deployment job. An instance
+ * is created for each job and may keep state between calls.
+ */
+public interface PollSchedule {
+	/**
+	 * Returns the number of milliseconds to wait before the next poll.
+	 * 
+	 * @param lastResult
+	 *        The result of the last poll or <code>null</code> if the job has not been polled yet
+	 * @return The delay in milliseconds
+	 */
+	long nextDelay(PollResult lastResult);
+}
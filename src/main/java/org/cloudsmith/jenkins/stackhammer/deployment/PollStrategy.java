@@ -0,0 +1,97 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import java.util.List;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.cloudsmith.stackhammer.api.model.PollResult;
+
+/**
+ * The strategies that can be selected in the global configuration to control
+ * how often a deployment job is polled.
+ */
+public enum PollStrategy {
+	/**
+	 * Always waits the configured poll interval between polls.
+	 */
+	FIXED("Fixed interval") {
+		@Override
+		public PollSchedule newSchedule(final long pollInterval) {
+			return new PollSchedule() {
+				public long nextDelay(PollResult lastResult) {
+					return pollInterval;
+				}
+			};
+		}
+	},
+
+	/**
+	 * Polls quickly right after the job has been submitted, backs off exponentially
+	 * while the job is waiting to start and polls at a tighter cadence for as long
+	 * as the job produces log entries. The configured poll interval is used as the
+	 * upper limit.
+	 */
+	ADAPTIVE("Adaptive backoff") {
+		@Override
+		public PollSchedule newSchedule(final long pollInterval) {
+			return new PollSchedule() {
+				private long delay = Math.min(MIN_DELAY, pollInterval);
+
+				public long nextDelay(PollResult lastResult) {
+					if(lastResult == null)
+						return delay;
+
+					switch(lastResult.getJobState()) {
+						case SLEEPING:
+						case RUNNING:
+							List<LogEntry> logEntries = lastResult.getLogEntries();
+							if(logEntries != null && !logEntries.isEmpty()) {
+								delay = Math.max(Math.min(MIN_DELAY, pollInterval), pollInterval / 4);
+								break;
+							}
+							// Fall through. Nothing happened since last poll so we back off
+						default:
+							delay = Math.min(delay * 2, pollInterval);
+					}
+					return delay;
+				}
+			};
+		}
+	};
+
+	/**
+	 * The shortest delay used by the adaptive strategy
+	 */
+	static final long MIN_DELAY = 1000L;
+
+	private final String displayName;
+
+	private PollStrategy(String displayName) {
+		this.displayName = displayName;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	/**
+	 * Creates a schedule for one job.
+	 * 
+	 * @param pollInterval
+	 *        The configured poll interval in milliseconds
+	 * @return A new schedule
+	 */
+	public abstract PollSchedule newSchedule(long pollInterval);
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.remoting.VirtualChannel;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudsmith.jenkins.stackhammer.common.ModelTransfer;
+import org.cloudsmith.jenkins.stackhammer.deployment.PollEngine.JobListener;
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+
+/**
+ * A {@link JobListener} that is sent to a build node and passes the log entries to a
+ * listener on the master. The entries are sent as XML through an exported {@link Receiver}
+ * since the model classes are not known to be serializable.
+ *
+ * @see ModelTransfer
+ */
+public class RemoteJobListener implements JobListener, Serializable {
+	/**
+	 * The exported end of the listener that lives on the master.
+	 */
+	public interface Receiver {
+		void logEntriesReceived(String logEntriesXML) throws IOException;
+	}
+
+	private static final long serialVersionUID = -6216463917468404453L;
+
+	/**
+	 * Exports <code>listener</code> through <code>channel</code>.
+	 *
+	 * @return A listener that can be sent over the channel
+	 */
+	public static JobListener export(VirtualChannel channel, final JobListener listener) {
+		Receiver receiver = new Receiver() {
+			@SuppressWarnings("unchecked")
+			public void logEntriesReceived(String logEntriesXML) throws IOException {
+				listener.logEntriesReceived((List<LogEntry>) ModelTransfer.fromXML(logEntriesXML));
+			}
+		};
+		return new RemoteJobListener(channel.export(Receiver.class, receiver));
+	}
+
+	private final Receiver receiver;
+
+	private RemoteJobListener(Receiver receiver) {
+		this.receiver = receiver;
+	}
+
+	public void logEntriesReceived(List<LogEntry> logEntries) throws IOException {
+		// The entries are often a view of a larger list, so only the entries themselves are sent
+		receiver.logEntriesReceived(ModelTransfer.toXML(new ArrayList<LogEntry>(logEntries)));
+	}
+}
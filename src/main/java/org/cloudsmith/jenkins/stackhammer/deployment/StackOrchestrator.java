@@ -0,0 +1,250 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.Launcher;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.BuildListener;
+import hudson.model.TaskListener;
+import hudson.model.AbstractBuild;
+import hudson.tasks.Builder;
+import hudson.util.StreamTaskListener;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudsmith.jenkins.stackhammer.common.StackOpBuildStep;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * A {@link Builder} that deploys several stacks in the order given by a {@link DeploymentPlan}.
+ * The stacks of each wave are deployed concurrently and the next wave is started when all
+ * deployments of the current wave have succeeded. If a deployment fails, the remaining waves
+ * are skipped. The results are aggregated into one {@link DeploymentReport}.
+ */
+public class StackOrchestrator extends Builder implements StackOpBuildStep {
+	/**
+	 * Writes the output of one deployment to the build log with the name of the stack in
+	 * front of each line, so that the output of concurrent deployments can be told apart.
+	 */
+	private static class StackOutputStream extends LineTransformationOutputStream {
+		private final byte[] prefix;
+
+		private final PrintStream logger;
+
+		StackOutputStream(String stack, PrintStream logger) {
+			this.prefix = ('[' + stack + "] ").getBytes();
+			this.logger = logger;
+		}
+
+		@Override
+		protected void eol(byte[] b, int len) throws IOException {
+			synchronized(logger) {
+				logger.write(prefix);
+				logger.write(b, 0, len);
+			}
+		}
+	}
+
+	/**
+	 * The number of stacks that are deployed concurrently when no parallelism has been configured
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * The number of seconds to wait for the deployments to record that they were aborted
+	 */
+	private static final long ABORT_WAIT = 10;
+
+	private final String stacks;
+
+	private final Boolean dryRun;
+
+	private final String branch;
+
+	private final String apiKey;
+
+	private final Integer parallelism;
+
+	@DataBoundConstructor
+	public StackOrchestrator(String stacks, Boolean dryRun, String branch, String apiKey, Integer parallelism) {
+		this.stacks = stacks;
+		this.dryRun = dryRun;
+		this.branch = branch;
+		this.apiKey = apiKey;
+		this.parallelism = parallelism;
+	}
+
+	private Callable<Boolean> createDeployment(final DeploymentResult data, final Launcher launcher,
+			final PrintStream logger, final String stack) {
+		final boolean dryRunFlag = dryRun == null
+				? false
+				: dryRun.booleanValue();
+		return new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				StackOutputStream out = new StackOutputStream(stack, logger);
+				TaskListener stackListener = new StreamTaskListener(out);
+				try {
+					return Boolean.valueOf(Deployer.deploy(
+						data, launcher, stackListener, stack, getBranch(), getApiKey(), dryRunFlag, false));
+				}
+				finally {
+					stackListener.getLogger().flush();
+					out.close();
+				}
+			}
+		};
+	}
+
+	public String getApiKey() {
+		return apiKey;
+	}
+
+	public String getBranch() {
+		return branch;
+	}
+
+	@Override
+	public StackOrchestratorDescriptor getDescriptor() {
+		return (StackOrchestratorDescriptor) super.getDescriptor();
+	}
+
+	public Boolean getDryRun() {
+		return dryRun;
+	}
+
+	/**
+	 * Returns the maximum number of stacks that are deployed concurrently or <code>null</code>
+	 * to use the {@link #DEFAULT_PARALLELISM}.
+	 */
+	public Integer getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns the deployment plan as entered by the user.
+	 *
+	 * @see DeploymentPlan
+	 */
+	public String getStacks() {
+		return stacks;
+	}
+
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+			throws InterruptedException {
+		PrintStream logger = listener.getLogger();
+		DeploymentPlan plan;
+		try {
+			plan = DeploymentPlan.parse(getStacks());
+		}
+		catch(IllegalArgumentException e) {
+			listener.error(e.getMessage());
+			return false;
+		}
+
+		try {
+			Deployer.logParameters(logger);
+		}
+		catch(Exception e) {
+			e.printStackTrace(listener.error("Exception during deployment"));
+			return false;
+		}
+
+		List<List<String>> waves = plan.getWaves();
+		int widest = 0;
+		for(List<String> wave : waves)
+			widest = Math.max(widest, wave.size());
+
+		int threads = parallelism == null || parallelism.intValue() < 1
+				? DEFAULT_PARALLELISM
+				: parallelism.intValue();
+		threads = Math.min(threads, widest);
+
+		logger.format(
+			"Deploying %d stacks in %d waves using %d threads%n", plan.getStackCount(), waves.size(), threads);
+		ExecutorService executor = Executors.newFixedThreadPool(
+			threads, new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Stack Hammer deployer " + threadNumber.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+		DeploymentReport report = new DeploymentReport();
+		build.addAction(report);
+		try {
+			for(int waveIndex = 0; waveIndex < waves.size(); ++waveIndex) {
+				List<String> wave = waves.get(waveIndex);
+				report.startWave();
+				logger.format("Starting wave %d of %d: %s%n", waveIndex + 1, waves.size(), wave);
+
+				List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(wave.size());
+				for(String stack : wave) {
+					DeploymentResult data = new DeploymentResult(build, stack);
+					report.addResult(data);
+					futures.add(executor.submit(createDeployment(data, launcher, logger, stack)));
+				}
+
+				List<String> failed = new ArrayList<String>();
+				for(int idx = 0; idx < futures.size(); ++idx)
+					if(!futures.get(idx).get().booleanValue())
+						failed.add(wave.get(idx));
+
+				if(!failed.isEmpty()) {
+					List<String> skipped = new ArrayList<String>();
+					for(List<String> laterWave : waves.subList(waveIndex + 1, waves.size()))
+						skipped.addAll(laterWave);
+					report.addSkippedStacks(skipped);
+					listener.error("Deployment of %s failed", failed);
+					if(!skipped.isEmpty())
+						logger.format("Skipping the deployment of %s%n", skipped);
+					return false;
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			executor.shutdownNow();
+
+			// Give the deployments a chance to record that they were aborted
+			executor.awaitTermination(ABORT_WAIT, TimeUnit.SECONDS);
+			listener.error("Deployment was aborted");
+			throw e;
+		}
+		catch(ExecutionException e) {
+			executor.shutdownNow();
+			e.getCause().printStackTrace(listener.error("Exception during deployment"));
+			return false;
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		logger.format("Deployed %d stacks in %d waves%n", plan.getStackCount(), waves.size());
+		return true;
+	}
+}
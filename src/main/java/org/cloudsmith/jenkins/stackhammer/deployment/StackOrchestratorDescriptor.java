@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.Extension;
+import hudson.tasks.Builder;
+import hudson.util.FormValidation;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+
+import org.cloudsmith.jenkins.stackhammer.common.StackOpDescriptor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Descriptor for {@link StackOrchestrator}. Used as a singleton.
+ * The class is marked as public so that it can be accessed from views.
+ *
+ * <p>
+ * See <tt>src/main/resources/org/cloudsmith/jenkins/stackhammer/deployment/StackOrchestrator/*.jelly</tt>
+ * for the actual HTML fragment for the configuration screen.
+ */
+@Extension
+public final class StackOrchestratorDescriptor extends StackOpDescriptor<Builder> {
+	public StackOrchestratorDescriptor() {
+		super(StackOrchestrator.class);
+	}
+
+	/**
+	 * Performs on-the-fly validation of the form field 'stacks'.
+	 *
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckStacks(@QueryParameter String value) throws IOException, ServletException {
+		try {
+			DeploymentPlan plan = DeploymentPlan.parse(value);
+			int waveCount = plan.getWaves().size();
+			return FormValidation.ok(plan.getStackCount() + " stacks in " + waveCount + (waveCount == 1
+					? " wave"
+					: " waves"));
+		}
+		catch(IllegalArgumentException e) {
+			return FormValidation.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * This human readable name is used in the configuration screen.
+	 */
+	@Override
+	public String getDisplayName() {
+		return "Stack Hammer Orchestrated Deployment";
+	}
+}
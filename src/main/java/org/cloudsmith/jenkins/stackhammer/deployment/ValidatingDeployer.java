@@ -0,0 +1,74 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.model.AbstractBuild;
+import hudson.tasks.Builder;
+
+import org.cloudsmith.jenkins.stackhammer.common.StackOpBuildStep;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * A {@link Builder} that validates a stack and, if the validation reports no errors,
+ * deploys it. The repository is cloned once and the same client is used for both
+ * operations. The validation is recorded in the {@link DeploymentResult} so that
+ * the build gets one report.
+ */
+public class ValidatingDeployer extends Builder implements StackOpBuildStep {
+
+	private final Boolean dryRun;
+
+	private final String branch;
+
+	private final String stack;
+
+	private final String apiKey;
+
+	@DataBoundConstructor
+	public ValidatingDeployer(String stack, Boolean dryRun, String branch, String apiKey) {
+		this.stack = stack;
+		this.dryRun = dryRun;
+		this.branch = branch;
+		this.apiKey = apiKey;
+	}
+
+	public String getApiKey() {
+		return apiKey;
+	}
+
+	public String getBranch() {
+		return branch;
+	}
+
+	@Override
+	public ValidatingDeploymentDescriptor getDescriptor() {
+		return (ValidatingDeploymentDescriptor) super.getDescriptor();
+	}
+
+	public Boolean getDryRun() {
+		return dryRun;
+	}
+
+	public String getStack() {
+		return stack;
+	}
+
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+			throws InterruptedException {
+		return Deployer.deploy(build, launcher, listener, getStack(), getBranch(), getApiKey(), getDryRun(), true);
+	}
+}
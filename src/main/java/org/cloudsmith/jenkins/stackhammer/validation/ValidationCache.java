@@ -0,0 +1,193 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.validation;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * A persistent cache that maps a stack, branch and revision to the build that
+ * last validated it successfully. A build that validates the same stack at the
+ * same revision can then reuse a copy of the {@link ValidationResult} of that
+ * build. The cache only holds references to builds, so the results themselves
+ * are never duplicated on disk. The cache is written when an entry is added. The
+ * lookup counters are only kept in memory.
+ */
+public class ValidationCache {
+	private static class BuildRef {
+		final String project;
+
+		final int number;
+
+		BuildRef(String project, int number) {
+			this.project = project;
+			this.number = number;
+		}
+	}
+
+	/**
+	 * The maximum number of entries. The oldest entry is removed when this limit is exceeded.
+	 */
+	public static final int MAX_ENTRIES = 1000;
+
+	private static final Logger LOGGER = Logger.getLogger(ValidationCache.class.getName());
+
+	private static ValidationCache instance;
+
+	public static synchronized ValidationCache getInstance() {
+		if(instance == null) {
+			instance = new ValidationCache();
+			XmlFile file = getConfigFile();
+			if(file.exists()) {
+				try {
+					instance = (ValidationCache) file.read();
+				}
+				catch(IOException e) {
+					LOGGER.log(Level.WARNING, "Unable to read " + file, e);
+				}
+			}
+		}
+		return instance;
+	}
+
+	private static XmlFile getConfigFile() {
+		return new XmlFile(new File(Jenkins.getInstance().getRootDir(), ValidationCache.class.getName() + ".xml"));
+	}
+
+	/**
+	 * The API key is part of the key so that a build never sees a result that its own key wouldn't
+	 * give it. Only a digest of it is used since the cache is written to disk.
+	 */
+	private static String key(String serviceURL, String apiKey, String stack, String branch, String revision) {
+		return serviceURL + '\n' + Util.getDigestOf(String.valueOf(apiKey)) + '\n' + stack + '\n' + branch + '\n' +
+				revision;
+	}
+
+	private final LinkedHashMap<String, BuildRef> entries = new LinkedHashMap<String, BuildRef>();
+
+	private transient long lookups;
+
+	private transient long hits;
+
+	/**
+	 * Returns the number of lookups since the last restart that found a result.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the hit rate in percent or zero if no lookups have been made.
+	 */
+	public synchronized int getHitRate() {
+		return lookups == 0
+				? 0
+				: (int) (hits * 100 / lookups);
+	}
+
+	/**
+	 * Returns the total number of lookups since the last restart.
+	 */
+	public synchronized long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * Finds the result of an earlier successful validation.
+	 *
+	 * @return The result or <code>null</code> if the validation has not been performed or if
+	 *         the build that performed it no longer exists. The entry of a build that no
+	 *         longer exists is removed from the cache, but the removal is not written until
+	 *         the next {@link #put(String, String, String, String, String, AbstractBuild) put}.
+	 *         The entry of a build that is still running is kept since its result may not
+	 *         have been attached yet.
+	 */
+	public ValidationResult lookup(String serviceURL, String apiKey, String stack, String branch, String revision) {
+		String key = key(serviceURL, apiKey, stack, branch, revision);
+		BuildRef ref;
+		synchronized(this) {
+			++lookups;
+			ref = entries.get(key);
+		}
+
+		ValidationResult result = null;
+		boolean building = false;
+		if(ref != null) {
+			AbstractProject<?, ?> project = Jenkins.getInstance().getItemByFullName(ref.project, AbstractProject.class);
+			if(project != null) {
+				AbstractBuild<?, ?> build = project.getBuildByNumber(ref.number);
+				if(build != null) {
+					result = ValidationReport.findResult(build, stack);
+					building = build.isBuilding();
+				}
+			}
+		}
+
+		synchronized(this) {
+			if(result == null) {
+				// Another put may have replaced the entry while the build was looked up
+				if(ref != null && !building && entries.get(key) == ref)
+					entries.remove(key);
+			}
+			else
+				++hits;
+		}
+		return result;
+	}
+
+	/**
+	 * Records a successful validation.
+	 *
+	 * @param build
+	 *        The build that performed the validation
+	 */
+	public void put(String serviceURL, String apiKey, String stack, String branch, String revision,
+			AbstractBuild<?, ?> build) {
+		synchronized(this) {
+			String key = key(serviceURL, apiKey, stack, branch, revision);
+
+			// Remove first so that the entry becomes the youngest
+			entries.remove(key);
+			entries.put(key, new BuildRef(build.getProject().getFullName(), build.getNumber()));
+			Iterator<Map.Entry<String, BuildRef>> itor = entries.entrySet().iterator();
+			for(int excess = entries.size() - MAX_ENTRIES; excess > 0; --excess) {
+				itor.next();
+				itor.remove();
+			}
+		}
+		save();
+	}
+
+	private synchronized void save() {
+		XmlFile file = getConfigFile();
+		try {
+			file.write(this);
+		}
+		catch(IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to write " + file, e);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.validation;
+
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+
+import org.cloudsmith.jenkins.stackhammer.common.ClientRegistry.Client;
+import org.cloudsmith.jenkins.stackhammer.common.HttpTransport;
+import org.cloudsmith.jenkins.stackhammer.common.ModelTransfer;
+import org.cloudsmith.jenkins.stackhammer.common.PhaseTimings;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Kind;
+import org.cloudsmith.jenkins.stackhammer.common.StackOpCallable;
+import org.cloudsmith.stackhammer.api.model.Diagnostic;
+import org.cloudsmith.stackhammer.api.model.Repository;
+import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
+
+/**
+ * Clones and validates one stack.
+ */
+public class ValidationCallable extends StackOpCallable<ValidationCallable.Outcome> {
+	/**
+	 * The results of the clone and the validation. The validation result is <code>null</code>
+	 * if the clone failed.
+	 */
+	public static class Outcome implements Serializable {
+		private static final long serialVersionUID = 5180262735102553513L;
+
+		private final PhaseTimings timings = new PhaseTimings();
+
+		private transient ResultWithDiagnostic<Repository> cloneResult;
+
+		private transient ResultWithDiagnostic<String> validationResult;
+
+		/**
+		 * Records the results in <code>data</code>.
+		 */
+		public void applyTo(ValidationResult data) {
+			data.setTimings(timings);
+			if(cloneResult != null)
+				data.setCloneDiagnostic(cloneResult);
+			if(validationResult != null)
+				data.setResult(validationResult);
+		}
+
+		/**
+		 * Writes the results as XML since the model classes are not known to be serializable.
+		 */
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+			ModelTransfer.writeModel(out, cloneResult);
+			ModelTransfer.writeModel(out, validationResult);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			cloneResult = (ResultWithDiagnostic<Repository>) ModelTransfer.readModel(in);
+			validationResult = (ResultWithDiagnostic<String>) ModelTransfer.readModel(in);
+		}
+	}
+
+	private static final long serialVersionUID = -5338929606858519633L;
+
+	public ValidationCallable(String serviceURL, String apiKey, HttpTransport transport, String stack, String branch,
+			long cloneCacheTTL, TaskListener listener) {
+		super(serviceURL, apiKey, transport, stack, branch, cloneCacheTTL, listener);
+	}
+
+	public Outcome call() throws IOException {
+		Outcome outcome = new Outcome();
+		PrintStream logger = listener.getLogger();
+		try {
+			Client client = getClient();
+			outcome.cloneResult = cloneRepository(client, outcome.timings);
+			if(outcome.cloneResult.getSeverity() == Diagnostic.ERROR) {
+				listener.error(outcome.cloneResult.toString());
+				return outcome;
+			}
+			outcome.cloneResult.log(logger);
+
+			Repository repo = outcome.cloneResult.getResult();
+			logger.format("Sending order to validate stack %s/%s%n", repo.getOwner(), repo.getName());
+			enter(Kind.VALIDATION, outcome.timings);
+			try {
+				long phaseStart = System.currentTimeMillis();
+				outcome.validationResult = client.getStackService().validateStack(
+					repo, repo.getOwner() + "/" + repo.getName());
+				outcome.timings.setValidateTime(System.currentTimeMillis() - phaseStart);
+			}
+			finally {
+				leave(Kind.VALIDATION);
+			}
+
+			if(outcome.validationResult.getSeverity() == Diagnostic.ERROR) {
+				invalidateClone();
+				listener.error(outcome.validationResult.toString());
+				return outcome;
+			}
+			outcome.validationResult.log(logger);
+			return outcome;
+		}
+		catch(InterruptedException e) {
+			// Remoting only passes the declared exception type
+			Thread.currentThread().interrupt();
+			InterruptedIOException ie = new InterruptedIOException(
+				"Interrupted while waiting for Stack Hammer Service");
+			ie.initCause(e);
+			throw ie;
+		}
+		catch(IOException e) {
+			invalidateClone();
+			throw e;
+		}
+		catch(RuntimeException e) {
+			invalidateClone();
+			throw e;
+		}
+	}
+}
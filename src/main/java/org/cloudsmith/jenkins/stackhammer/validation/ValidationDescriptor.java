@@ -16,6 +16,7 @@ package org.cloudsmith.jenkins.stackhammer.validation;
 import hudson.Extension;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 
 import java.io.IOException;
 import java.net.URI;
@@ -25,7 +26,12 @@ import javax.servlet.ServletException;
 
 import net.sf.json.JSONObject;
 
+import org.cloudsmith.jenkins.stackhammer.common.ClientRegistry;
+import org.cloudsmith.jenkins.stackhammer.common.CloneCache;
+import org.cloudsmith.jenkins.stackhammer.common.HttpTransport;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle;
 import org.cloudsmith.jenkins.stackhammer.common.StackOpDescriptor;
+import org.cloudsmith.jenkins.stackhammer.deployment.PollStrategy;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -45,6 +51,54 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 
 	private Integer maxTime;
 
+	private String pollStrategy;
+
+	private Integer cloneCacheTTL;
+
+	private boolean reuseValidations;
+
+	private boolean runOnAgents;
+
+	private Integer httpPoolSize;
+
+	private Integer connectTimeout;
+
+	private Integer readTimeout;
+
+	private Integer maxConcurrentClones;
+
+	private Integer maxConcurrentValidations;
+
+	private Integer maxConcurrentDeployments;
+
+	private static FormValidation checkPositive(String value, String message) {
+		if(value.length() == 0)
+			// This is OK, we'll use the default
+			return FormValidation.ok();
+
+		try {
+			Integer intVal = Integer.valueOf(value);
+			if(intVal.intValue() > 0)
+				return FormValidation.ok();
+		}
+		catch(NumberFormatException e) {
+		}
+		return FormValidation.error(message);
+	}
+
+	private static int intValue(Integer value, int defaultValue) {
+		return value == null || value.intValue() < 1
+				? defaultValue
+				: value.intValue();
+	}
+
+	private static Integer optInteger(JSONObject formData, String key) {
+		String value = formData.optString(key, null);
+		return value != null && value.length() > 0
+				? Integer.valueOf(value)
+				: null;
+	}
+
 	public ValidationDescriptor() {
 		super(Validator.class);
 		load();
@@ -61,10 +115,116 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 			this.maxTime = Integer.valueOf(maxTime);
 		serviceURL = formData.getString("serviceURL");
 
+		String cloneCacheTTL = formData.optString("cloneCacheTTL", null);
+		this.cloneCacheTTL = cloneCacheTTL != null && cloneCacheTTL.length() > 0
+				? Integer.valueOf(cloneCacheTTL)
+				: null;
+
+		httpPoolSize = optInteger(formData, "httpPoolSize");
+		connectTimeout = optInteger(formData, "connectTimeout");
+		readTimeout = optInteger(formData, "readTimeout");
+		maxConcurrentClones = optInteger(formData, "maxConcurrentClones");
+		maxConcurrentValidations = optInteger(formData, "maxConcurrentValidations");
+		maxConcurrentDeployments = optInteger(formData, "maxConcurrentDeployments");
+
+		pollStrategy = formData.optString("pollStrategy", null);
+		reuseValidations = formData.optBoolean("reuseValidations");
+		runOnAgents = formData.optBoolean("runOnAgents");
+
 		save();
+
+		// Clients and clones obtained with the old settings must not be reused
+		ClientRegistry.invalidateAll(getHttpTransport());
+		CloneCache.invalidateAll();
 		return super.configure(req, formData);
 	}
 
+	/**
+	 * Performs on-the-fly validation of the form field 'cloneCacheTTL'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckCloneCacheTTL(@QueryParameter String value) throws IOException, ServletException {
+		if(value.length() == 0)
+			// This is OK, we'll use the default
+			return FormValidation.ok();
+
+		try {
+			Integer intVal = Integer.valueOf(value);
+			if(intVal.intValue() >= 0)
+				return FormValidation.ok();
+		}
+		catch(NumberFormatException e) {
+		}
+		return FormValidation.error("The clone cache time must be zero or a positive integer value");
+	}
+
+	/**
+	 * Performs on-the-fly validation of the form field 'connectTimeout'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckConnectTimeout(@QueryParameter String value) throws IOException, ServletException {
+		return checkPositive(value, "The connect timeout must be a positive integer value");
+	}
+
+	/**
+	 * Performs on-the-fly validation of the form field 'httpPoolSize'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckHttpPoolSize(@QueryParameter String value) throws IOException, ServletException {
+		return checkPositive(value, "The number of connections must be a positive integer value");
+	}
+
+	/**
+	 * Performs on-the-fly validation of the form field 'maxConcurrentClones'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckMaxConcurrentClones(@QueryParameter String value) throws IOException,
+			ServletException {
+		return checkPositive(value, "The number of concurrent clones must be a positive integer value");
+	}
+
+	/**
+	 * Performs on-the-fly validation of the form field 'maxConcurrentDeployments'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckMaxConcurrentDeployments(@QueryParameter String value) throws IOException,
+			ServletException {
+		return checkPositive(value, "The number of concurrent deployments must be a positive integer value");
+	}
+
+	/**
+	 * Performs on-the-fly validation of the form field 'maxConcurrentValidations'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckMaxConcurrentValidations(@QueryParameter String value) throws IOException,
+			ServletException {
+		return checkPositive(value, "The number of concurrent validations must be a positive integer value");
+	}
+
 	/**
 	 * Performs on-the-fly validation of the form field 'maxTime'.
 	 * 
@@ -89,6 +249,29 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 		}
 	}
 
+	/**
+	 * Performs on-the-fly validation of the form field 'parallelism'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckParallelism(@QueryParameter String value) throws IOException, ServletException {
+		if(value.length() == 0)
+			// This is OK, we'll use the default
+			return FormValidation.ok();
+
+		try {
+			Integer intVal = Integer.valueOf(value);
+			if(intVal.intValue() > 0)
+				return FormValidation.ok();
+		}
+		catch(NumberFormatException e) {
+		}
+		return FormValidation.error("The parallelism must be a positive integer value");
+	}
+
 	/**
 	 * Performs on-the-fly validation of the form field 'pollInterval'.
 	 * 
@@ -112,6 +295,18 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 		return FormValidation.error("The poll interval must be a positive integer value");
 	}
 
+	/**
+	 * Performs on-the-fly validation of the form field 'readTimeout'.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	public FormValidation doCheckReadTimeout(@QueryParameter String value) throws IOException, ServletException {
+		return checkPositive(value, "The read timeout must be a positive integer value");
+	}
+
 	/**
 	 * Performs on-the-fly validation of the form field 'serviceURL'.
 	 * 
@@ -137,6 +332,36 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 		}
 	}
 
+	/**
+	 * Performs on-the-fly validation of the form field 'stack'. The field may contain
+	 * several stacks separated by commas or whitespace and each one is checked.
+	 * 
+	 * @param value
+	 *        This parameter receives the value that the user has typed.
+	 * @return
+	 *         Indicates the outcome of the validation. This is sent to the browser.
+	 */
+	@Override
+	public FormValidation doCheckStack(@QueryParameter String value) throws IOException, ServletException {
+		String trimmed = value.trim();
+		if(trimmed.length() == 0)
+			return FormValidation.error("Please specify a stack");
+		for(String stack : trimmed.split("[,\\s]+"))
+			if(!isStack(stack))
+				return FormValidation.error("Stack %s must be in the form <owner>/<name>", stack);
+		return FormValidation.ok();
+	}
+
+	/**
+	 * Fills the drop down list for the form field 'pollStrategy'.
+	 */
+	public ListBoxModel doFillPollStrategyItems() {
+		ListBoxModel items = new ListBoxModel();
+		for(PollStrategy strategy : PollStrategy.values())
+			items.add(strategy.getDisplayName(), strategy.name());
+		return items;
+	}
+
 	/**
 	 * This human readable name is used in the configuration screen.
 	 */
@@ -145,6 +370,76 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 		return "Stack Hammer Validation";
 	}
 
+	/**
+	 * This method returns the number of seconds that a verified clone is cached
+	 * from the global configuration. A value of <code>null</code> or zero means
+	 * that clones are not cached.
+	 */
+	public Integer getCloneCacheTTL() {
+		return cloneCacheTTL;
+	}
+
+	/**
+	 * This method returns the number of milliseconds that a verified clone is cached
+	 * or zero when clones are not cached.
+	 */
+	public long getCloneCacheTTLMillis() {
+		return cloneCacheTTL == null
+				? 0
+				: cloneCacheTTL.longValue() * 1000;
+	}
+
+	/**
+	 * This method returns the number of seconds to wait for a connection to the service
+	 * from the global configuration.
+	 */
+	public Integer getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * This method returns the maximum number of pooled connections to the service from
+	 * the global configuration.
+	 */
+	public Integer getHttpPoolSize() {
+		return httpPoolSize;
+	}
+
+	/**
+	 * Returns the HTTP transport that the clients use, with defaults for the settings that
+	 * have not been configured.
+	 */
+	public HttpTransport getHttpTransport() {
+		return new HttpTransport(
+			intValue(httpPoolSize, HttpTransport.DEFAULT_POOL_SIZE),
+			intValue(connectTimeout, HttpTransport.DEFAULT_CONNECT_TIMEOUT),
+			intValue(readTimeout, HttpTransport.DEFAULT_READ_TIMEOUT));
+	}
+
+	/**
+	 * This method returns the maximum number of clone calls that the builds make concurrently
+	 * to the service from the global configuration. A value of <code>null</code> means no limit.
+	 */
+	public Integer getMaxConcurrentClones() {
+		return maxConcurrentClones;
+	}
+
+	/**
+	 * This method returns the maximum number of deployment calls that the builds make concurrently
+	 * to the service from the global configuration. A value of <code>null</code> means no limit.
+	 */
+	public Integer getMaxConcurrentDeployments() {
+		return maxConcurrentDeployments;
+	}
+
+	/**
+	 * This method returns the maximum number of validation calls that the builds make concurrently
+	 * to the service from the global configuration. A value of <code>null</code> means no limit.
+	 */
+	public Integer getMaxConcurrentValidations() {
+		return maxConcurrentValidations;
+	}
+
 	/**
 	 * This method returns the max time from the global configuration
 	 */
@@ -159,6 +454,61 @@ public final class ValidationDescriptor extends StackOpDescriptor<Builder> {
 		return pollInterval;
 	}
 
+	/**
+	 * This method returns the poll strategy from the global configuration. The
+	 * {@link PollStrategy#FIXED} strategy is returned when none has been configured.
+	 */
+	public PollStrategy getPollStrategy() {
+		if(pollStrategy != null && pollStrategy.length() > 0) {
+			try {
+				return PollStrategy.valueOf(pollStrategy);
+			}
+			catch(IllegalArgumentException e) {
+			}
+		}
+		return PollStrategy.FIXED;
+	}
+
+	/**
+	 * Returns the throttle that limits the concurrent calls to the configured service.
+	 */
+	public ServiceThrottle getThrottle() {
+		return ServiceThrottle.getInstance(
+			getServiceURL(), intValue(maxConcurrentClones, 0), intValue(maxConcurrentValidations, 0),
+			intValue(maxConcurrentDeployments, 0));
+	}
+
+	/**
+	 * Returns the cache of earlier validations. Used by the view to show the hit rate.
+	 */
+	public ValidationCache getValidationCache() {
+		return ValidationCache.getInstance();
+	}
+
+	/**
+	 * This method returns <code>true</code> if a build may reuse the result of an
+	 * earlier validation of the same stack at the same revision.
+	 */
+	public boolean isReuseValidations() {
+		return reuseValidations;
+	}
+
+	/**
+	 * This method returns the number of seconds to wait for data from the service from
+	 * the global configuration.
+	 */
+	public Integer getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * This method returns <code>true</code> if the calls to the Stack Hammer Service are
+	 * made from the node that runs the build rather than from the Jenkins master.
+	 */
+	public boolean isRunOnAgents() {
+		return runOnAgents;
+	}
+
 	/**
 	 * This method returns the serviceURL of the global configuration.
 	 */
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.validation;
+
+import hudson.Functions;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.Api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudsmith.jenkins.stackhammer.common.StackOpResult;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Aggregated report for a {@link Validator} that validates more than one stack.
+ * The report holds one {@link ValidationResult} per stack. The result for a
+ * stack is reached through the path <build>/stackhammerValidations/stack/<index>
+ */
+@ExportedBean(defaultVisibility = 999)
+public class ValidationReport implements Action, Serializable {
+	private static final long serialVersionUID = -2386153437766455519L;
+
+	/**
+	 * Finds the result of the validation of <code>stack</code> in the given build. Both
+	 * single stack results and results that are part of a report are considered.
+	 *
+	 * @return The result or <code>null</code> if the stack was not validated by the build
+	 */
+	public static ValidationResult findResult(AbstractBuild<?, ?> build, String stack) {
+		for(ValidationResult result : build.getActions(ValidationResult.class))
+			if(stack.equals(result.getStack()))
+				return result;
+
+		for(ValidationReport report : build.getActions(ValidationReport.class))
+			for(ValidationResult result : report.getStacks())
+				if(stack.equals(result.getStack()))
+					return result;
+		return null;
+	}
+
+	private final List<ValidationResult> stacks;
+
+	public ValidationReport(List<ValidationResult> stacks) {
+		this.stacks = new ArrayList<ValidationResult>(stacks);
+	}
+
+	public Api getApi() {
+		return new Api(this);
+	}
+
+	public String getDisplayName() {
+		return "Validation Report";
+	}
+
+	/**
+	 * Returns the number of stacks that has errors.
+	 */
+	public int getFailedCount() {
+		int count = 0;
+		for(ValidationResult result : stacks)
+			if(result.isFailed())
+				++count;
+		return count;
+	}
+
+	public String getIconFileName() {
+		return Functions.getResourcePath() + "/plugin/stackhammer/icons/hammer-32x32.png";
+	}
+
+	public String getLargeIconFileName() {
+		return "/plugin/stackhammer/icons/hammer-48x48.png";
+	}
+
+	/**
+	 * Method called by the Stapler dispatcher for the path <build>/stackhammerValidations/stack/<index>
+	 */
+	public ValidationResult getStack(int index) {
+		return index >= 0 && index < stacks.size()
+				? stacks.get(index)
+				: null;
+	}
+
+	@Exported
+	public List<ValidationResult> getStacks() {
+		return Collections.unmodifiableList(stacks);
+	}
+
+	public String getSummary() {
+		int errorCount = 0;
+		int warningCount = 0;
+		for(ValidationResult result : stacks) {
+			errorCount += result.getResultErrorCount();
+			warningCount += result.getResultWarningCount();
+		}
+
+		int failed = getFailedCount();
+		StringBuilder bld = new StringBuilder();
+		bld.append(stacks.size());
+		bld.append(" stacks, ");
+		if(failed > 0) {
+			bld.append(failed);
+			bld.append(" failed, ");
+		}
+		bld.append(StackOpResult.getSummary(errorCount, warningCount));
+		return bld.toString();
+	}
+
+	public String getUrlName() {
+		return "stackhammerValidations";
+	}
+}
@@ -17,11 +17,11 @@ import hudson.Functions;
 import hudson.model.AbstractBuild;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.codec.binary.Base64;
+import org.cloudsmith.jenkins.stackhammer.common.BuildSummary.Operation;
+import org.cloudsmith.jenkins.stackhammer.common.GraphStore;
 import org.cloudsmith.jenkins.stackhammer.common.StackOpResult;
 import org.cloudsmith.stackhammer.api.model.Repository;
 import org.kohsuke.stapler.StaplerRequest;
@@ -32,12 +32,31 @@ import org.kohsuke.stapler.export.ExportedBean;
 public class ValidationResult extends StackOpResult<String> {
 	private static final long serialVersionUID = 264848698476660935L;
 
-	private final AbstractBuild<?, ?> build;
+	private static final String DEPENDENCY_GRAPH = "dependency-graph";
+
+	/**
+	 * Returns the name of the dependency graph file of a stack. The name is qualified with
+	 * the stack since several stacks may be validated by one build.
+	 */
+	private static String getGraphName(String stack) {
+		return stack == null
+				? DEPENDENCY_GRAPH
+				: DEPENDENCY_GRAPH + '-' + stack;
+	}
+
+	private AbstractBuild<?, ?> build;
+
+	private String stack;
 
 	public ValidationResult(AbstractBuild<?, ?> build) {
 		this.build = build;
 	}
 
+	public ValidationResult(AbstractBuild<?, ?> build, String stack) {
+		this.build = build;
+		this.stack = stack;
+	}
+
 	@Override
 	public ValidationResult clone() {
 		ValidationResult clone;
@@ -50,6 +69,21 @@ public class ValidationResult extends StackOpResult<String> {
 		return clone;
 	}
 
+	/**
+	 * Creates a copy of this result that belongs to another build. Used when a
+	 * build reuses the result of an earlier validation of the same revision.
+	 *
+	 * @param otherBuild
+	 *        The build that will own the copy
+	 * @return The copy
+	 */
+	public ValidationResult copyFor(AbstractBuild<?, ?> otherBuild) {
+		ValidationResult copy = clone();
+		copy.build = otherBuild;
+		copy.resetTimings();
+		return copy;
+	}
+
 	/**
 	 * Method called by the Stapler dispatcher. It is automatically detected
 	 * when the dispatcher looks for methods that starts with &quot;do&quot;
@@ -63,18 +97,8 @@ public class ValidationResult extends StackOpResult<String> {
 		String name = req.getRestOfPath();
 		String result = getResult();
 		if((name == null || name.isEmpty()) && result != null) {
-			rsp.setContentType("image/svg+xml");
-			OutputStream out = rsp.getOutputStream();
-			try {
-				byte[] svgData = Base64.decodeBase64(result);
-				// svgData = GraphTrimmer.stripFixedSize(svgData);
-				rsp.setContentLength(svgData.length);
-				out.write(svgData);
-				return;
-			}
-			finally {
-				out.close();
-			}
+			GraphStore.serve(req, rsp, GraphStore.getGraphFile(build, getGraphName(getStack())), result);
+			return;
 		}
 		rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
 	}
@@ -93,6 +117,18 @@ public class ValidationResult extends StackOpResult<String> {
 		return "/plugin/stackhammer/icons/hammer-48x48.png";
 	}
 
+	/**
+	 * Returns the name of the validated stack in the form &lt;owner&gt;/&lt;name&gt;. The
+	 * name is obtained from the repository for results that were stored before the
+	 * name was recorded.
+	 */
+	@Override
+	public String getStack() {
+		return stack == null
+				? super.getStack()
+				: stack;
+	}
+
 	public String getStackBase() {
 		Repository repo = getRepository();
 		return repo == null
@@ -101,7 +137,7 @@ public class ValidationResult extends StackOpResult<String> {
 	}
 
 	public String getSummary() {
-		return getSummary(getResultDiagnostics());
+		return getResultSummary();
 	}
 
 	public String getSummaryValidationGraphURL() {
@@ -120,4 +156,11 @@ public class ValidationResult extends StackOpResult<String> {
 				? "dependencyGraph"
 				: null;
 	}
+
+	@Override
+	public Operation summarize() {
+		return new Operation(
+			Operation.VALIDATION, getStack(), isFailed(), getResultErrorCount(), getResultWarningCount(), -1,
+			getTimings());
+	}
 }
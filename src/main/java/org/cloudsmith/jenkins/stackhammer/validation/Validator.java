@@ -13,31 +13,40 @@
  */
 package org.cloudsmith.jenkins.stackhammer.validation;
 
+import hudson.EnvVars;
 import hudson.Launcher;
 import hudson.model.BuildListener;
+import hudson.model.TaskListener;
 import hudson.model.AbstractBuild;
 import hudson.tasks.Builder;
+import hudson.util.StreamTaskListener;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.cloudsmith.stackhammer.api.StackHammerModule;
-import org.cloudsmith.stackhammer.api.model.Diagnostic;
-import org.cloudsmith.stackhammer.api.model.Provider;
-import org.cloudsmith.stackhammer.api.model.Repository;
-import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
-import org.cloudsmith.stackhammer.api.service.RepositoryService;
-import org.cloudsmith.stackhammer.api.service.StackHammerFactory;
-import org.cloudsmith.stackhammer.api.service.StackService;
+import org.cloudsmith.jenkins.stackhammer.common.SingleFlight;
+import org.cloudsmith.jenkins.stackhammer.common.SingleFlight.Flight;
+import org.cloudsmith.jenkins.stackhammer.common.StackOpBuildStep;
+import org.cloudsmith.jenkins.stackhammer.common.StackOpCallable;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-
 /**
  * A {@link Builder} that performs Stack Hammer Validation
  */
-public class Validator extends Builder {
+public class Validator extends Builder implements StackOpBuildStep {
 
 	private final String branch;
 
@@ -45,11 +54,64 @@ public class Validator extends Builder {
 
 	private final String apiKey;
 
+	private final Integer parallelism;
+
+	/**
+	 * The number of stacks that are validated concurrently when no parallelism has been configured
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * Validations in progress, keyed by service, API key, stack, branch and revision
+	 */
+	private static final SingleFlight<String, ValidationResult> inFlight =
+			new SingleFlight<String, ValidationResult>();
+
 	@DataBoundConstructor
-	public Validator(String stack, String branch, String apiKey) {
+	public Validator(String stack, String branch, String apiKey, Integer parallelism) {
 		this.stack = stack;
 		this.branch = branch;
 		this.apiKey = apiKey;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Returns the revision of a stack that the build checked out or <code>null</code> if it is
+	 * unknown. <tt>GIT_COMMIT</tt> is the revision of the repository of the job, so it is only
+	 * used when <tt>GIT_URL</tt> is the GitHub repository of the stack and <tt>GIT_BRANCH</tt>
+	 * is the branch that is validated.
+	 */
+	static String getRevision(Map<String, String> env, String stack, String branch) {
+		String revision = env.get("GIT_COMMIT");
+		if(revision == null || revision.length() == 0 || branch == null || branch.length() == 0)
+			return null;
+		return isStackRepository(env.get("GIT_URL"), stack) && isBranch(env.get("GIT_BRANCH"), branch)
+				? revision
+				: null;
+	}
+
+	private static boolean isBranch(String gitBranch, String branch) {
+		// The Git plugin qualifies the branch with the name of the remote, e.g. origin/master
+		return gitBranch != null && (gitBranch.equals(branch) || gitBranch.endsWith('/' + branch));
+	}
+
+	private static boolean isStackRepository(String gitURL, String stack) {
+		if(gitURL == null)
+			return false;
+
+		// Matches https://github.com/<owner>/<name>.git, git@github.com:<owner>/<name>.git and
+		// the like. GitHub names are not case sensitive.
+		String url = gitURL.trim().toLowerCase();
+		if(url.endsWith("/"))
+			url = url.substring(0, url.length() - 1);
+		if(url.endsWith(".git"))
+			url = url.substring(0, url.length() - 4);
+		stack = stack.toLowerCase();
+		int start = url.length() - stack.length();
+		if(start < 1 || !url.endsWith(stack) || url.indexOf("github.com") < 0)
+			return false;
+		char separator = url.charAt(start - 1);
+		return separator == '/' || separator == ':';
 	}
 
 	public String getApiKey() {
@@ -65,65 +127,233 @@ public class Validator extends Builder {
 		return (ValidationDescriptor) super.getDescriptor();
 	}
 
+	/**
+	 * Returns the maximum number of stacks that are validated concurrently or <code>null</code>
+	 * to use the {@link #DEFAULT_PARALLELISM}.
+	 */
+	public Integer getParallelism() {
+		return parallelism;
+	}
+
 	public String getStack() {
 		return stack;
 	}
 
+	/**
+	 * Returns the stacks to validate. The stack setting may contain several stacks
+	 * separated by commas or whitespace.
+	 */
+	public List<String> getStacks() {
+		List<String> stacks = new ArrayList<String>();
+		if(stack != null)
+			for(String s : stack.trim().split("[,\\s]+"))
+				if(s.length() > 0 && !stacks.contains(s))
+					stacks.add(s);
+		return stacks;
+	}
+
 	@Override
 	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
-		try {
-			PrintStream logger = listener.getLogger();
-			String serverURL = getDescriptor().getServiceURL();
+		PrintStream logger = listener.getLogger();
+		String serverURL = getDescriptor().getServiceURL();
+		List<String> stacks = getStacks();
+		if(stacks.isEmpty()) {
+			listener.error("No stack was specified");
+			return false;
+		}
 
+		EnvVars env;
+		try {
 			URI uri = URI.create(serverURL);
 			logger.format(
 				"Using parameters%n scheme=%s%n host=%s%n port=%s%n prefix=%s%n", uri.getScheme(), uri.getHost(),
 				uri.getPort(), uri.getPath());
 
-			Injector injector = Guice.createInjector(new StackHammerModule(
-				uri.getScheme(), uri.getHost(), uri.getPort(), uri.getPath(), getApiKey()));
+			env = build.getEnvironment(listener);
+		}
+		catch(Exception e) {
+			e.printStackTrace(listener.error("Exception during validation of %s", getStack()));
+			return false;
+		}
 
-			ValidationResult data = new ValidationResult(build);
+		if(stacks.size() == 1) {
+			ValidationResult data = validate(build, launcher, stacks.get(0), serverURL, env, listener);
 			build.addAction(data);
+			return !data.isFailed();
+		}
+		return validateAll(build, launcher, stacks, serverURL, env, listener);
+	}
 
-			StackHammerFactory factory = injector.getInstance(StackHammerFactory.class);
-			RepositoryService repoService = factory.createRepositoryService();
-			String[] splitName = getStack().split("/");
-			String owner = splitName[0];
-			String name = splitName[1];
+	/**
+	 * Clones and validates one stack. Errors are reported to the <code>listener</code>
+	 * and recorded in the returned result. When the revision of the stack is known from the
+	 * checkout of the build, a validation of the same stack, branch and revision that another
+	 * build is running is shared rather than repeated.
+	 *
+	 * @return The result of the validation, never <code>null</code>
+	 */
+	private ValidationResult validate(AbstractBuild<?, ?> build, Launcher launcher, String stack, String serverURL,
+			EnvVars env, TaskListener listener) {
+		PrintStream logger = listener.getLogger();
+		String revision = getRevision(env, stack, branch);
+		if(revision == null && env.get("GIT_COMMIT") != null && getDescriptor().isReuseValidations())
 			logger.format(
-				"Verifying that a local clone of repository %s/%s[%s] exists at Stack Hammer Service%n", owner, name,
-				branch);
-			ResultWithDiagnostic<Repository> cloneResult = repoService.cloneRepository(
-				Provider.GITHUB, owner, name, branch);
+				"The build has not checked out branch %s of stack %s so the validation is not reused%n", branch,
+				stack);
 
-			data.setCloneDiagnostic(cloneResult);
+		if(revision != null && getDescriptor().isReuseValidations()) {
+			ValidationResult cached = ValidationCache.getInstance().lookup(
+				serverURL, getApiKey(), stack, branch, revision);
+			if(cached != null) {
+				logger.format(
+					"Reusing the validation of stack %s at revision %s from an earlier build%n", stack, revision);
+				return cached.copyFor(build);
+			}
+		}
+
+		ValidationResult data = new ValidationResult(build, stack);
+		if(revision == null) {
+			performValidation(build, launcher, data, serverURL, revision, listener);
+			return data;
+		}
 
-			if(cloneResult.getSeverity() == Diagnostic.ERROR) {
-				listener.error(cloneResult.toString());
-				return false;
+		// The API key is part of the key so that a build never sees a result that its own key wouldn't give it
+		Flight<ValidationResult> flight = inFlight.join(
+			serverURL + '\n' + getApiKey() + '\n' + stack + '\n' + branch + '\n' + revision);
+		if(!flight.isLeader()) {
+			logger.format(
+				"Waiting for another build that is validating stack %s at revision %s%n", stack, revision);
+			try {
+				ValidationResult shared = flight.await();
+				if(shared != null) {
+					logger.format("Using the validation of stack %s from the other build%n", stack);
+					return shared.copyFor(build);
+				}
+			}
+			catch(InterruptedException e) {
+				listener.error("Validation of %s was interrupted", stack);
+				Thread.currentThread().interrupt();
+				return data;
 			}
-			cloneResult.log(logger);
+			logger.format("The other build didn't complete the validation of stack %s%n", stack);
+			performValidation(build, launcher, data, serverURL, revision, listener);
+			return data;
+		}
+
+		ValidationResult shared = null;
+		try {
+			if(performValidation(build, launcher, data, serverURL, revision, listener))
+				shared = data;
+			return data;
+		}
+		finally {
+			inFlight.land(flight, shared);
+		}
+	}
+
+	/**
+	 * Clones and validates the stack of <code>data</code> and records the outcome in it.
+	 * Errors are reported to the <code>listener</code>.
+	 *
+	 * @return <code>true</code> if the service was asked to validate the stack and answered,
+	 *         <code>false</code> if the validation was interrupted or failed with an exception
+	 */
+	private boolean performValidation(AbstractBuild<?, ?> build, Launcher launcher, ValidationResult data,
+			String serverURL, String revision, TaskListener listener) {
+		String stack = data.getStack();
+		try {
+			ValidationCallable callable = new ValidationCallable(
+				serverURL, getApiKey(), getDescriptor().getHttpTransport(), stack, branch,
+				getDescriptor().getCloneCacheTTLMillis(), listener);
+			StackOpCallable.execute(
+				launcher, getDescriptor().isRunOnAgents(), getDescriptor().getThrottle(), callable).applyTo(data);
 
-			StackService stackService = factory.createStackService();
-			Repository repo = cloneResult.getResult();
+			if(revision != null && getDescriptor().isReuseValidations() && !data.isFailed())
+				ValidationCache.getInstance().put(serverURL, getApiKey(), stack, branch, revision, build);
+			return true;
+		}
+		catch(InterruptedException e) {
+			listener.error("Validation of %s was interrupted", stack);
+			Thread.currentThread().interrupt();
+		}
+		catch(InterruptedIOException e) {
+			// The validation was interrupted while waiting in the throttle
+			listener.error("Validation of %s was interrupted", stack);
+			Thread.currentThread().interrupt();
+		}
+		catch(Exception e) {
+			e.printStackTrace(listener.error("Exception during validation of %s", stack));
+		}
+		return false;
+	}
+
+	/**
+	 * Validates several stacks concurrently, using at most {@link #getParallelism()} threads. The
+	 * output of each validation is buffered and written to the build log when the
+	 * validation completes so that the output of different stacks is not interleaved.
+	 * The results are aggregated into one {@link ValidationReport}.
+	 */
+	private boolean validateAll(final AbstractBuild<?, ?> build, final Launcher launcher, List<String> stacks,
+			final String serverURL, final EnvVars env, BuildListener listener) {
+		final PrintStream logger = listener.getLogger();
+		int threads = parallelism == null || parallelism.intValue() < 1
+				? DEFAULT_PARALLELISM
+				: parallelism.intValue();
+		threads = Math.min(threads, stacks.size());
 
-			logger.format("Sending order to validate stack %s/%s%n", owner, name);
-			ResultWithDiagnostic<String> validationResult = stackService.validateStack(repo, repo.getOwner() + "/" +
-					repo.getName());
+		logger.format("Validating %d stacks using %d threads%n", stacks.size(), threads);
+		ExecutorService executor = Executors.newFixedThreadPool(
+			threads, new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger();
 
-			data.setResult(validationResult);
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Stack Hammer validator " + threadNumber.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
 
-			if(validationResult.getSeverity() == Diagnostic.ERROR) {
-				listener.error(validationResult.toString());
-				return false;
+		List<ValidationResult> results = new ArrayList<ValidationResult>(stacks.size());
+		try {
+			List<Future<ValidationResult>> futures = new ArrayList<Future<ValidationResult>>(stacks.size());
+			for(final String stack : stacks) {
+				futures.add(executor.submit(new Callable<ValidationResult>() {
+					public ValidationResult call() throws IOException {
+						ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+						TaskListener stackListener = new StreamTaskListener(buffer);
+						try {
+							return validate(build, launcher, stack, serverURL, env, stackListener);
+						}
+						finally {
+							stackListener.getLogger().flush();
+							synchronized(logger) {
+								logger.format("[%s]%n", stack);
+								buffer.writeTo(logger);
+							}
+						}
+					}
+				}));
 			}
-			validationResult.log(logger);
+			for(Future<ValidationResult> future : futures)
+				results.add(future.get());
 		}
-		catch(Exception e) {
-			e.printStackTrace(listener.error("Exception during validation of %s", getStack()));
+		catch(InterruptedException e) {
+			executor.shutdownNow();
+			listener.error("Validation was interrupted");
 			return false;
 		}
-		return true;
+		catch(ExecutionException e) {
+			executor.shutdownNow();
+			e.getCause().printStackTrace(listener.error("Exception during validation of %s", getStack()));
+			return false;
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		ValidationReport report = new ValidationReport(results);
+		build.addAction(report);
+		logger.format("Validated %d stacks, %d failed%n", results.size(), report.getFailedCount());
+		return report.getFailedCount() == 0;
 	}
 }
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/*
+ * Loads the log entries of the Stack Hammer deployment report on demand, one
+ * page at a time, from the logEntries endpoint of the report.
+ */
+var stackhammerSeverity = "";
+
+var stackhammerNextOffset = {};
+
+function stackhammerAppendCell(row, text, title) {
+	var cell = document.createElement("td");
+	cell.style.overflow = "hidden";
+	cell.style.textOverflow = "ellipsis";
+	if(title) {
+		var div = document.createElement("div");
+		div.title = title;
+		div.appendChild(document.createTextNode(text));
+		cell.appendChild(div);
+	} else
+		cell.appendChild(document.createTextNode(text == null ? "" : text));
+	row.appendChild(cell);
+}
+
+function stackhammerLoadMore(idx) {
+	var host = document.getElementById("stackhammer-host-" + idx).title;
+	var offset = stackhammerNextOffset[idx];
+	if(offset == null || offset < 0)
+		return;
+
+	var url = "logEntries?host=" + encodeURIComponent(host) + "&offset=" + offset;
+	if(stackhammerSeverity != "")
+		url += "&severity=" + stackhammerSeverity;
+
+	new Ajax.Request(url, {
+		method : "get",
+		onSuccess : function(rsp) {
+			var page = rsp.responseText.evalJSON();
+			var tbody = document.getElementById("stackhammer-entries-" + idx);
+			for(var i = 0; i < page.entries.length; ++i) {
+				var entry = page.entries[i];
+				var row = document.createElement("tr");
+				stackhammerAppendCell(row, entry.severity, null);
+				stackhammerAppendCell(row, entry.message, entry.details);
+				tbody.appendChild(row);
+			}
+			stackhammerNextOffset[idx] = page.nextOffset;
+			document.getElementById("stackhammer-more-" + idx).style.display = page.nextOffset < 0 ? "none" : "";
+		}
+	});
+}
+
+function stackhammerReload(idx) {
+	var tbody = document.getElementById("stackhammer-entries-" + idx);
+	while(tbody.firstChild)
+		tbody.removeChild(tbody.firstChild);
+	stackhammerNextOffset[idx] = 0;
+	stackhammerLoadMore(idx);
+}
+
+function stackhammerToggleHost(idx) {
+	var style = document.getElementById("stackhammer-host-" + idx).style;
+	if(style.display == "none") {
+		style.display = "";
+		if(stackhammerNextOffset[idx] == null)
+			stackhammerReload(idx);
+	} else
+		style.display = "none";
+}
+
+function stackhammerFilterChanged(severity) {
+	stackhammerSeverity = severity;
+	for( var idx in stackhammerNextOffset)
+		stackhammerReload(idx);
+}
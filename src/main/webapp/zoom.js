@@ -0,0 +1,70 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/*
+ * Zoom and pan support for the SVG graphs produced by Stack Hammer. The
+ * functions are called from the controls that GraphTrimmer injects into
+ * each graph.
+ */
+var svgNS = "http://www.w3.org/2000/svg";
+
+var viewport = null;
+
+var baseTransform = "";
+
+var scale = 1;
+
+var translateX = 0;
+
+var translateY = 0;
+
+function init(evt, width, height) {
+	var root = evt.target;
+	if(root.ownerDocument && root.ownerDocument.documentElement)
+		root = root.ownerDocument.documentElement;
+
+	// Replace the fixed size of the graph so that it fills the window
+	if(!root.getAttribute("viewBox") && width && height)
+		root.setAttribute("viewBox", "0 0 " + parseFloat(width) + " " + parseFloat(height));
+	root.setAttribute("width", "100%");
+	root.setAttribute("height", "100%");
+
+	var groups = root.getElementsByTagNameNS(svgNS, "g");
+	for(var i = 0; i < groups.length; ++i) {
+		var cls = groups[i].getAttribute("class");
+		if(cls && cls.split(" ").indexOf("graph") >= 0) {
+			viewport = groups[i];
+			break;
+		}
+	}
+	if(viewport != null && viewport.getAttribute("transform"))
+		baseTransform = viewport.getAttribute("transform");
+}
+
+function updateTransform() {
+	if(viewport != null)
+		viewport.setAttribute("transform", "translate(" + translateX + " " + translateY + ") scale(" + scale + ") " +
+				baseTransform);
+}
+
+function pan(dx, dy) {
+	translateX += dx;
+	translateY += dy;
+	updateTransform();
+}
+
+function zoom(factor) {
+	scale *= factor;
+	updateTransform();
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStreamException;
+
+public class ModelTransferTest {
+	@Test
+	public void collectionOfValuesIsTransferred() {
+		List<String> values = new ArrayList<String>(Arrays.asList("a", "b"));
+		assertEquals(values, ModelTransfer.fromXML(ModelTransfer.toXML(values)));
+	}
+
+	@Test(expected = XStreamException.class)
+	public void disallowedElementIsRejected() {
+		ModelTransfer.fromXML("<list><java.io.File><path>/etc/passwd</path></java.io.File></list>");
+	}
+
+	@Test(expected = XStreamException.class)
+	public void disallowedRootIsRejected() {
+		ModelTransfer.fromXML(
+			"<java.lang.ProcessBuilder><command><string>id</string></command></java.lang.ProcessBuilder>");
+	}
+
+	@Test
+	public void modelAndValueTypesAreAllowed() {
+		assertTrue(ModelTransfer.isAllowed(LogEntry.class));
+		assertTrue(ModelTransfer.isAllowed(LogEntry[].class));
+		assertTrue(ModelTransfer.isAllowed(ArrayList.class));
+		assertTrue(ModelTransfer.isAllowed(String.class));
+		assertTrue(ModelTransfer.isAllowed(int[].class));
+	}
+
+	@Test
+	public void otherTypesAreNotAllowed() {
+		assertFalse(ModelTransfer.isAllowed(File.class));
+		assertFalse(ModelTransfer.isAllowed(ProcessBuilder.class));
+		assertFalse(ModelTransfer.isAllowed(Object[].class));
+		assertFalse(ModelTransfer.isAllowed(Runtime.class));
+	}
+}
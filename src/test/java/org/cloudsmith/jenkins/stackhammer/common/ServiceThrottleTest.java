@@ -0,0 +1,170 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Admission;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Kind;
+import org.cloudsmith.jenkins.stackhammer.common.ServiceThrottle.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServiceThrottleTest {
+	private ExecutorService executor;
+
+	/**
+	 * Returns a throttle that only lets one deployment through at a time.
+	 */
+	private static ServiceThrottle newThrottle(String name) {
+		return ServiceThrottle.getInstance("http://" + name + ".example.com/", 0, 0, 1);
+	}
+
+	/**
+	 * Waits until <code>count</code> calls are queued for a permit.
+	 */
+	private void awaitQueueDepth(ServiceThrottle throttle, Kind kind, int count) throws InterruptedException {
+		for(int attempt = 0; throttle.getQueueDepth(kind) < count; ++attempt) {
+			if(attempt == 1000)
+				fail("The call was never queued");
+			Thread.sleep(10);
+		}
+	}
+
+	private Future<Admission> enterLater(final Session session, final Kind kind) {
+		return executor.submit(new Callable<Admission>() {
+			public Admission call() throws Exception {
+				return session.enter(kind);
+			}
+		});
+	}
+
+	@Before
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void closeReturnsHeldPermits() throws Exception {
+		ServiceThrottle throttle = newThrottle("close");
+		Session first = throttle.openSession();
+		first.enter(Kind.DEPLOYMENT);
+		first.close();
+
+		Session second = throttle.openSession();
+		assertFalse(second.enter(Kind.DEPLOYMENT).isQueued());
+		second.close();
+	}
+
+	@Test
+	public void closedSessionDoesNotKeepAPermit() throws Exception {
+		ServiceThrottle throttle = newThrottle("closed");
+		Session holder = throttle.openSession();
+		holder.enter(Kind.DEPLOYMENT);
+
+		Session waiter = throttle.openSession();
+		Future<Admission> waiting = enterLater(waiter, Kind.DEPLOYMENT);
+		awaitQueueDepth(throttle, Kind.DEPLOYMENT, 1);
+		waiter.close();
+		holder.leave(Kind.DEPLOYMENT);
+		try {
+			waiting.get(10, TimeUnit.SECONDS);
+			fail("A closed session was admitted");
+		}
+		catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof InterruptedException);
+		}
+
+		Session next = throttle.openSession();
+		assertFalse(next.enter(Kind.DEPLOYMENT).isQueued());
+		next.close();
+		holder.close();
+	}
+
+	@Test
+	public void instanceIsReplacedWhenTheLimitsChange() {
+		ServiceThrottle throttle = newThrottle("limits");
+		assertSame(throttle, newThrottle("limits"));
+		assertNotSame(throttle, ServiceThrottle.getInstance("http://limits.example.com/", 0, 0, 2));
+	}
+
+	@Test
+	public void leaveWithoutPermitIsIgnored() throws Exception {
+		ServiceThrottle throttle = newThrottle("leave");
+		Session session = throttle.openSession();
+		session.leave(Kind.DEPLOYMENT);
+		session.enter(Kind.DEPLOYMENT);
+
+		// The extra leave must not have added a permit
+		Session other = throttle.openSession();
+		Future<Admission> waiting = enterLater(other, Kind.DEPLOYMENT);
+		awaitQueueDepth(throttle, Kind.DEPLOYMENT, 1);
+		session.close();
+		assertTrue(waiting.get(10, TimeUnit.SECONDS).isQueued());
+		other.close();
+	}
+
+	@Test
+	public void secondCallWaitsForTheFirst() throws Exception {
+		ServiceThrottle throttle = newThrottle("wait");
+		Session first = throttle.openSession();
+		Admission admission = first.enter(Kind.DEPLOYMENT);
+		assertFalse(admission.isQueued());
+		assertEquals(1, admission.getLimit());
+
+		Session second = throttle.openSession();
+		Future<Admission> waiting = enterLater(second, Kind.DEPLOYMENT);
+		awaitQueueDepth(throttle, Kind.DEPLOYMENT, 1);
+		assertFalse(waiting.isDone());
+
+		first.leave(Kind.DEPLOYMENT);
+		Admission queued = waiting.get(10, TimeUnit.SECONDS);
+		assertTrue(queued.isQueued());
+		assertEquals(0, queued.getQueueDepth());
+		assertEquals(0, throttle.getQueueDepth(Kind.DEPLOYMENT));
+		second.close();
+		first.close();
+	}
+
+	@Test
+	public void unlimitedKindIsNotThrottled() throws Exception {
+		ServiceThrottle throttle = newThrottle("unlimited");
+		Session session = throttle.openSession();
+		for(int idx = 0; idx < 10; ++idx) {
+			Admission admission = session.enter(Kind.CLONE);
+			assertFalse(admission.isQueued());
+			assertEquals(0, admission.getLimit());
+		}
+		assertEquals(0, throttle.getQueueDepth(Kind.CLONE));
+		session.close();
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudsmith.jenkins.stackhammer.common.SingleFlight.Flight;
+import org.junit.Test;
+
+public class SingleFlightTest {
+	@Test
+	public void differentKeysHaveDifferentLeaders() {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>();
+		assertTrue(flights.join("a").isLeader());
+		assertTrue(flights.join("b").isLeader());
+	}
+
+	@Test
+	public void followerGetsTheOutcomeOfTheLeader() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>();
+		Flight<String> leader = flights.join("key");
+		final Flight<String> follower = flights.join("key");
+		assertTrue(leader.isLeader());
+		assertFalse(follower.isLeader());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> outcome = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return follower.await();
+				}
+			});
+			flights.land(leader, "done");
+			assertEquals("done", outcome.get(10, TimeUnit.SECONDS));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void joinAfterLandingStartsANewFlight() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>();
+		Flight<String> first = flights.join("key");
+		Flight<String> follower = flights.join("key");
+		flights.land(first, null);
+		assertNull(follower.await());
+
+		Flight<String> second = flights.join("key");
+		assertTrue(second.isLeader());
+		flights.land(second, "again");
+		assertEquals("again", second.await());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void onlyTheLeaderCanLand() {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>();
+		flights.join("key");
+		flights.land(flights.join("key"), "outcome");
+	}
+}
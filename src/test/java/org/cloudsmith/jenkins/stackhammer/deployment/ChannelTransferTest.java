@@ -0,0 +1,242 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import hudson.remoting.Callable;
+import hudson.remoting.Channel;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentCallable.Outcome;
+import org.cloudsmith.jenkins.stackhammer.deployment.DeploymentResult.Cancellation;
+import org.cloudsmith.jenkins.stackhammer.deployment.PollEngine.JobListener;
+import org.cloudsmith.stackhammer.api.model.CatalogGraph;
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.cloudsmith.stackhammer.api.model.Repository;
+import org.cloudsmith.stackhammer.api.model.ResultWithDiagnostic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sends the objects that a {@link DeploymentCallable} exchanges with the master over a
+ * pair of connected channels, like when the callable executes on a build node.
+ */
+public class ChannelTransferTest {
+	/**
+	 * Calls a remote listener from the other end of the channel.
+	 */
+	private static class LogCallable implements Callable<Void, IOException> {
+		private static final long serialVersionUID = 1L;
+
+		private final JobListener listener;
+
+		LogCallable(JobListener listener) {
+			this.listener = listener;
+		}
+
+		public Void call() throws IOException {
+			List<LogEntry> entries = new ArrayList<LogEntry>();
+			for(String message : Arrays.asList("skipped", "first", "second"))
+				entries.add(new TestEntry(message));
+
+			// The poll engine passes views of the polled batches
+			listener.logEntriesReceived(entries.subList(1, entries.size()));
+			return null;
+		}
+	}
+
+	/**
+	 * Returns an outcome from the other end of the channel.
+	 */
+	private static class OutcomeCallable implements Callable<Outcome, IOException> {
+		private static final long serialVersionUID = 1L;
+
+		public Outcome call() throws IOException {
+			Outcome outcome = new Outcome();
+			setField(outcome, "cloneResult", new TestResult<Repository>(new TestRepository("acme", "shop")));
+			setField(outcome, "deploymentResult", new TestResult<List<CatalogGraph>>(
+				new ArrayList<CatalogGraph>(Arrays.asList(new TestCatalogGraph("node1", "PHN2Zz4=")))));
+			setField(outcome, "cancellation", Cancellation.TIMED_OUT);
+			return outcome;
+		}
+	}
+
+	private static class TestCatalogGraph extends CatalogGraph {
+		private static final long serialVersionUID = 1L;
+
+		private final String nodeName;
+
+		private final String graph;
+
+		TestCatalogGraph(String nodeName, String graph) {
+			this.nodeName = nodeName;
+			this.graph = graph;
+		}
+
+		@Override
+		public String getCatalogGraph() {
+			return graph;
+		}
+
+		@Override
+		public String getNodeName() {
+			return nodeName;
+		}
+	}
+
+	private static class TestEntry extends LogEntry {
+		private static final long serialVersionUID = 1L;
+
+		private final String message;
+
+		TestEntry(String message) {
+			this.message = message;
+		}
+
+		@Override
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private static class TestRepository extends Repository {
+		private static final long serialVersionUID = 1L;
+
+		private final String owner;
+
+		private final String name;
+
+		TestRepository(String owner, String name) {
+			this.owner = owner;
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getOwner() {
+			return owner;
+		}
+	}
+
+	private static class TestResult<T> extends ResultWithDiagnostic<T> {
+		private static final long serialVersionUID = 1L;
+
+		private final T result;
+
+		TestResult(T result) {
+			this.result = result;
+		}
+
+		@Override
+		public T getResult() {
+			return result;
+		}
+	}
+
+	private static Object getField(Object object, String name) throws Exception {
+		Field field = object.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		return field.get(object);
+	}
+
+	private static void setField(Object object, String name, Object value) throws IOException {
+		try {
+			Field field = object.getClass().getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(object, value);
+		}
+		catch(Exception e) {
+			throw new IOException(e.toString());
+		}
+	}
+
+	private ExecutorService executor;
+
+	private Channel master;
+
+	private Channel agent;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newCachedThreadPool();
+		final PipedInputStream masterIn = new PipedInputStream();
+		final PipedOutputStream agentOut = new PipedOutputStream(masterIn);
+		final PipedInputStream agentIn = new PipedInputStream();
+		PipedOutputStream masterOut = new PipedOutputStream(agentIn);
+
+		// Each end waits for the other end to connect
+		Future<Channel> agentEnd = executor.submit(new java.util.concurrent.Callable<Channel>() {
+			public Channel call() throws Exception {
+				return new Channel("agent", executor, agentIn, agentOut);
+			}
+		});
+		master = new Channel("master", executor, masterIn, masterOut);
+		agent = agentEnd.get();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		master.close();
+		agent.close();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void logEntriesAreSentToTheMaster() throws Exception {
+		final List<String> received = new ArrayList<String>();
+		JobListener collector = new JobListener() {
+			public void logEntriesReceived(List<LogEntry> logEntries) {
+				for(LogEntry logEntry : logEntries)
+					received.add(logEntry.getMessage());
+			}
+		};
+		master.call(new LogCallable(RemoteJobListener.export(master, collector)));
+		assertEquals(Arrays.asList("first", "second"), received);
+	}
+
+	@Test
+	public void outcomeIsSentToTheMaster() throws Exception {
+		Outcome outcome = master.call(new OutcomeCallable());
+		assertEquals(Cancellation.TIMED_OUT, outcome.getCancellation());
+		assertNull(getField(outcome, "validationResult"));
+
+		ResultWithDiagnostic<?> cloneResult = (ResultWithDiagnostic<?>) getField(outcome, "cloneResult");
+		Repository repository = (Repository) cloneResult.getResult();
+		assertEquals("acme", repository.getOwner());
+		assertEquals("shop", repository.getName());
+
+		ResultWithDiagnostic<?> deploymentResult = (ResultWithDiagnostic<?>) getField(outcome, "deploymentResult");
+		List<?> graphs = (List<?>) deploymentResult.getResult();
+		assertEquals(1, graphs.size());
+		assertEquals("node1", ((CatalogGraph) graphs.get(0)).getNodeName());
+		assertEquals("PHN2Zz4=", ((CatalogGraph) graphs.get(0)).getCatalogGraph());
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DeploymentPlanTest {
+	private static void assertInvalid(String text, String expectedMessage) {
+		try {
+			DeploymentPlan.parse(text);
+			fail("Plan was accepted: " + text);
+		}
+		catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+		}
+	}
+
+	@Test
+	public void commentsAndEmptyLinesAreIgnored() {
+		DeploymentPlan plan = DeploymentPlan.parse("# The shop\n\n  acme/shop  \r\n# end\n");
+		assertEquals(1, plan.getStackCount());
+		assertEquals(Arrays.asList(Arrays.asList("acme/shop")), plan.getWaves());
+	}
+
+	@Test
+	public void cycleIsRejected() {
+		assertInvalid("acme/a: acme/c\nacme/b: acme/a\nacme/c: acme/b\nacme/d", "form a cycle");
+	}
+
+	@Test
+	public void duplicateStackIsRejected() {
+		assertInvalid("acme/a\nacme/b\nacme/a: acme/b", "Line 3: stack acme/a is declared more than once");
+	}
+
+	@Test
+	public void emptyPlanIsRejected() {
+		assertInvalid(null, "No stack was specified");
+		assertInvalid("# nothing\n\n", "No stack was specified");
+	}
+
+	@Test
+	public void malformedStackIsRejected() {
+		assertInvalid("acme/a\nacme", "Line 2: stack acme is not in the form <owner>/<name>");
+		assertInvalid("acme/a: acme/b/c", "stack acme/b/c is not in the form <owner>/<name>");
+	}
+
+	@Test
+	public void selfDependencyIsRejected() {
+		assertInvalid("acme/a: acme/a", "depends on itself");
+	}
+
+	@Test
+	public void stacksAreDividedIntoWaves() {
+		DeploymentPlan plan = DeploymentPlan.parse("acme/database\n" + "acme/middleware: acme/database\n" +
+				"acme/shop: acme/middleware\n" + "acme/admin: acme/middleware, acme/database\n" + "acme/monitor\n");
+		List<List<String>> waves = plan.getWaves();
+		assertEquals(5, plan.getStackCount());
+		assertEquals(3, waves.size());
+		assertEquals(Arrays.asList("acme/database", "acme/monitor"), waves.get(0));
+		assertEquals(Arrays.asList("acme/middleware"), waves.get(1));
+		assertEquals(Arrays.asList("acme/shop", "acme/admin"), waves.get(2));
+	}
+
+	@Test
+	public void stacksMayBeDeclaredAfterTheirDependents() {
+		DeploymentPlan plan = DeploymentPlan.parse("acme/shop: acme/database acme/database\nacme/database");
+		assertEquals(
+			Arrays.asList(Arrays.asList("acme/database"), Arrays.asList("acme/shop")), plan.getWaves());
+	}
+
+	@Test
+	public void unknownDependencyIsRejected() {
+		assertInvalid("acme/a: acme/b", "Stack acme/a depends on acme/b which is not part of the deployment");
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.cloudsmith.stackhammer.api.model.MessageWithSeverity;
+import org.junit.Test;
+
+public class LogCursorTest {
+	/**
+	 * A log entry that returns the given values from the getters that the cursor uses.
+	 * A new instance is created for each entry, like when the entries are unmarshalled.
+	 */
+	private static class TestEntry extends LogEntry {
+		private static final long serialVersionUID = 1L;
+
+		private final String origin;
+
+		private final String message;
+
+		TestEntry(String origin, String message) {
+			this.origin = origin;
+			this.message = message;
+		}
+
+		@Override
+		public String getDetails() {
+			return null;
+		}
+
+		@Override
+		public String getLogicalOrigin() {
+			return origin;
+		}
+
+		@Override
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String getPhysicalOrigin() {
+			return origin;
+		}
+
+		@Override
+		public int getSeverity() {
+			return MessageWithSeverity.INFO;
+		}
+	}
+
+	private static List<LogEntry> entries(String... messages) {
+		List<LogEntry> entries = new ArrayList<LogEntry>(messages.length);
+		for(String message : messages)
+			entries.add(new TestEntry("host1", message));
+		return entries;
+	}
+
+	private static List<LogEntry> numbered(int count) {
+		List<LogEntry> entries = new ArrayList<LogEntry>(count);
+		for(int idx = 0; idx < count; ++idx)
+			entries.add(new TestEntry("host1", String.valueOf(idx)));
+		return entries;
+	}
+
+	private static List<String> messages(List<LogEntry> entries) {
+		List<String> messages = new ArrayList<String>(entries.size());
+		for(LogEntry entry : entries)
+			messages.add(entry.getMessage());
+		return messages;
+	}
+
+	@Test
+	public void differentOriginIsNotADuplicate() {
+		LogCursor cursor = new LogCursor();
+		cursor.advance(entries("a", "b"));
+		List<LogEntry> batch = new ArrayList<LogEntry>();
+		batch.add(new TestEntry("host2", "a"));
+		batch.addAll(entries("b", "c"));
+		assertEquals(3, cursor.advance(batch).size());
+		assertEquals(0, cursor.getDuplicateCount());
+	}
+
+	@Test
+	public void emptyBatchIsIgnored() {
+		LogCursor cursor = new LogCursor();
+		assertTrue(cursor.advance(null).isEmpty());
+		assertTrue(cursor.advance(new ArrayList<LogEntry>()).isEmpty());
+		assertEquals(0, cursor.getPosition());
+	}
+
+	@Test
+	public void changeBeforeTheWindowIsNotADuplicate() {
+		LogCursor cursor = new LogCursor();
+		List<LogEntry> log = numbered(LogCursor.WINDOW * 2);
+		cursor.advance(log);
+		List<LogEntry> batch = numbered(LogCursor.WINDOW * 2 + 1);
+		batch.set(0, new TestEntry("host1", "changed"));
+		assertEquals(batch.size(), cursor.advance(batch).size());
+		assertEquals(0, cursor.getDuplicateCount());
+	}
+
+	@Test
+	public void firstBatchIsAccepted() {
+		LogCursor cursor = new LogCursor();
+		assertEquals(Arrays.asList("a", "a", "b"), messages(cursor.advance(entries("a", "a", "b"))));
+		assertEquals(3, cursor.getPosition());
+		assertEquals(0, cursor.getDuplicateCount());
+		assertEquals(0, cursor.getSuspectedDuplicateCount());
+	}
+
+	@Test
+	public void partialMatchOfTheLogIsKept() {
+		LogCursor cursor = new LogCursor();
+		cursor.advance(entries("a", "b", "c"));
+		assertEquals(Arrays.asList("a", "b", "x", "d"), messages(cursor.advance(entries("a", "b", "x", "d"))));
+		assertEquals(0, cursor.getDuplicateCount());
+		assertEquals(7, cursor.getPosition());
+	}
+
+	@Test
+	public void repeatedTailIsKeptAndCounted() {
+		LogCursor cursor = new LogCursor();
+		cursor.advance(entries("a", "b", "c"));
+		assertEquals(Arrays.asList("b", "c", "d"), messages(cursor.advance(entries("b", "c", "d"))));
+		assertEquals(0, cursor.getDuplicateCount());
+		assertEquals(2, cursor.getSuspectedDuplicateCount());
+		assertEquals(6, cursor.getPosition());
+	}
+
+	@Test
+	public void freshEntriesAreACopy() {
+		LogCursor cursor = new LogCursor();
+		List<LogEntry> batch = entries("a", "b");
+		List<LogEntry> fresh = cursor.advance(batch);
+		batch.clear();
+		assertEquals(Arrays.asList("a", "b"), messages(fresh));
+	}
+
+	@Test
+	public void resentLongLogIsDropped() {
+		LogCursor cursor = new LogCursor();
+		cursor.advance(numbered(LogCursor.WINDOW * 2));
+		List<LogEntry> fresh = cursor.advance(numbered(LogCursor.WINDOW * 2 + 1));
+		assertEquals(Arrays.asList(String.valueOf(LogCursor.WINDOW * 2)), messages(fresh));
+		assertEquals(LogCursor.WINDOW * 2, cursor.getDuplicateCount());
+		assertEquals(LogCursor.WINDOW * 2 + 1, cursor.getPosition());
+	}
+
+	@Test
+	public void resentLogIsDropped() {
+		LogCursor cursor = new LogCursor();
+		cursor.advance(entries("a", "b"));
+		assertEquals(Arrays.asList("c"), messages(cursor.advance(entries("a", "b", "c"))));
+		assertEquals(2, cursor.getDuplicateCount());
+		assertEquals(3, cursor.getPosition());
+
+		assertTrue(cursor.advance(entries("a", "b", "c")).isEmpty());
+		assertEquals(5, cursor.getDuplicateCount());
+		assertEquals(3, cursor.getPosition());
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2012-, Cloudsmith Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.cloudsmith.jenkins.stackhammer.deployment;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudsmith.stackhammer.api.model.JobState;
+import org.cloudsmith.stackhammer.api.model.LogEntry;
+import org.cloudsmith.stackhammer.api.model.PollResult;
+import org.junit.Test;
+
+public class PollStrategyTest {
+	/**
+	 * A poll result that returns the given values from the getters that the schedule uses.
+	 */
+	private static class TestResult extends PollResult {
+		private static final long serialVersionUID = 1L;
+
+		private final JobState jobState;
+
+		private final List<LogEntry> logEntries;
+
+		TestResult(JobState jobState, List<LogEntry> logEntries) {
+			this.jobState = jobState;
+			this.logEntries = logEntries;
+		}
+
+		@Override
+		public JobState getJobState() {
+			return jobState;
+		}
+
+		@Override
+		public List<LogEntry> getLogEntries() {
+			return logEntries;
+		}
+	}
+
+	private static final long INTERVAL = 16000L;
+
+	@Test
+	public void adaptiveBacksOffWhileScheduled() {
+		PollSchedule schedule = PollStrategy.ADAPTIVE.newSchedule(INTERVAL);
+		assertEquals(1000L, schedule.nextDelay(null));
+		PollResult scheduled = new TestResult(JobState.SCHEDULED, null);
+		assertEquals(2000L, schedule.nextDelay(scheduled));
+		assertEquals(4000L, schedule.nextDelay(scheduled));
+		assertEquals(8000L, schedule.nextDelay(scheduled));
+		assertEquals(16000L, schedule.nextDelay(scheduled));
+		assertEquals(16000L, schedule.nextDelay(scheduled));
+	}
+
+	@Test
+	public void adaptiveTightensWhileLogging() {
+		PollSchedule schedule = PollStrategy.ADAPTIVE.newSchedule(INTERVAL);
+		PollResult idle = new TestResult(JobState.RUNNING, Collections.<LogEntry> emptyList());
+		schedule.nextDelay(idle);
+		schedule.nextDelay(idle);
+		schedule.nextDelay(idle);
+		assertEquals(16000L, schedule.nextDelay(idle));
+		LogEntry entry = new LogEntry() {
+			private static final long serialVersionUID = 1L;
+		};
+		PollResult logging = new TestResult(JobState.RUNNING, Collections.singletonList(entry));
+		assertEquals(4000L, schedule.nextDelay(logging));
+	}
+
+	@Test
+	public void adaptiveTreatsMissingLogEntriesAsEmpty() {
+		PollSchedule schedule = PollStrategy.ADAPTIVE.newSchedule(INTERVAL);
+		PollResult running = new TestResult(JobState.RUNNING, null);
+		assertEquals(2000L, schedule.nextDelay(running));
+		assertEquals(4000L, schedule.nextDelay(running));
+	}
+
+	@Test
+	public void fixedAlwaysUsesInterval() {
+		PollSchedule schedule = PollStrategy.FIXED.newSchedule(INTERVAL);
+		assertEquals(INTERVAL, schedule.nextDelay(null));
+		assertEquals(INTERVAL, schedule.nextDelay(new TestResult(JobState.RUNNING, null)));
+	}
+}